@@ -0,0 +1,155 @@
+package core.services;
+
+import core.models.actors.Client;
+import core.models.actors.Manager;
+import core.models.actors.Trainer;
+import core.models.enums.UserRole;
+import core.services.AuthService.AuthResult;
+import core.services.base.StorageBackends;
+import core.services.storage.ClientStorageService;
+import core.services.storage.ManagerStorageService;
+import core.services.storage.TrainerStorageService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Пропускная способность входа при N пользователях (90% клиенты, по 5% менеджеры и тренеры) и нескольких
+ * потоках сразу: старый authenticate (фильтр по getAll() каждого хранилища по очереди) против AuthService
+ * с PrincipalDirectory. Каждый поток входит случайным пользователем с верным паролем.
+ * Работает на хранилище в памяти, files/ не трогает:
+ *   javac -d out -cp lib/gson-2.10.1.jar $(find src bench -name '*.java')
+ *   java -cp out:lib/gson-2.10.1.jar -Ddanceclub.storage=memory core.services.LoginBenchmark 100000 1 4 8
+ * */
+public final class LoginBenchmark {
+    private static final long WARM_UP_MILLIS = 2_000;
+    private static final long RUN_MILLIS = 5_000;
+
+    private LoginBenchmark() {
+    }
+
+    // Логин, которым входит поток: имя и пароль (у клиента пароля нет)
+    private record Login(String name, String password) {
+    }
+
+    private interface Authenticator {
+        AuthResult authenticate(String name, String password);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String storage = System.getProperty(StorageBackends.STORAGE_PROPERTY);
+        if (storage == null) {
+            System.setProperty(StorageBackends.STORAGE_PROPERTY, "memory");
+        } else if (StorageBackends.configured() != StorageBackends.Kind.MEMORY) {
+            System.err.println("LoginBenchmark заполняет клуб синтетическими данными и работает только с -D"
+                    + StorageBackends.STORAGE_PROPERTY + "=memory");
+            System.exit(1);
+        }
+
+        int principals = args.length == 0 ? 100_000 : Integer.parseInt(args[0]);
+        int[] threadCounts = args.length < 2
+                ? new int[]{1, 4, 8}
+                : Arrays.stream(args).skip(1).mapToInt(Integer::parseInt).toArray();
+
+        ServiceRegistry registry = new ServiceRegistry();
+        List<Login> logins = fill(registry, principals);
+        ClientStorageService clients = registry.getClientStorage();
+        ManagerStorageService managers = registry.getManagerStorage();
+        TrainerStorageService trainers = registry.getTrainerStorage();
+        AuthService authService = registry.authServiceReady().join();
+
+        System.out.printf("%10s %-18s %8s %14s%n", "principals", "authenticate", "threads", "logins/s");
+        for (int threads : threadCounts) {
+            run(principals, "stream filter", threads, logins,
+                    (name, password) -> streamFilter(clients, managers, trainers, name, password));
+            run(principals, "PrincipalDirectory", threads, logins, authService::authenticate);
+        }
+        registry.close();
+    }
+
+    private static void run(int principals, String variant, int threadCount, List<Login> logins,
+                            Authenticator authenticator) throws InterruptedException {
+        measure(threadCount, WARM_UP_MILLIS, logins, authenticator);
+        long succeeded = measure(threadCount, RUN_MILLIS, logins, authenticator);
+        System.out.printf("%10d %-18s %8d %14.0f%n", principals, variant, threadCount, succeeded * 1000.0 / RUN_MILLIS);
+    }
+
+    // Число успешных входов за millis во всех потоках; неуспешный вход - ошибка в данных бенчмарка
+    private static long measure(int threadCount, long millis, List<Login> logins, Authenticator authenticator)
+            throws InterruptedException {
+        LongAdder succeeded = new LongAdder();
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    Login login = logins.get(random.nextInt(logins.size()));
+                    if (!authenticator.authenticate(login.name(), login.password()).success()) {
+                        throw new IllegalStateException("Login failed for " + login.name());
+                    }
+                    succeeded.increment();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return succeeded.sum();
+    }
+
+    // authenticate() до PrincipalDirectory: клиенты, затем менеджеры, затем тренеры, каждый раз через getAll()
+    private static AuthResult streamFilter(ClientStorageService clientStorage, ManagerStorageService managerStorage,
+                                           TrainerStorageService trainerStorage, String name, String password) {
+        Client client = clientStorage.getAll().stream()
+                .filter(c -> c.getName().equals(name))
+                .findFirst()
+                .orElse(null);
+        if (client != null) {
+            return new AuthResult(true, UserRole.CLIENT, client.getId());
+        }
+        Manager manager = managerStorage.getAll().stream()
+                .filter(m -> m.getName().equals(name) && m.getPassword().equals(password))
+                .findFirst()
+                .orElse(null);
+        if (manager != null) {
+            return new AuthResult(true, UserRole.MANAGER, manager.getId());
+        }
+        Trainer trainer = trainerStorage.getAll().stream()
+                .filter(t -> t.getName().equals(name) && t.getPassword().equals(password))
+                .findFirst()
+                .orElse(null);
+        if (trainer != null) {
+            return new AuthResult(true, UserRole.TRAINER, trainer.getId());
+        }
+        return new AuthResult(false, null, null);
+    }
+
+    private static List<Login> fill(ServiceRegistry registry, int principals) {
+        int employees = Math.max(1, principals / 20);
+        int clientCount = Math.max(1, principals - 2 * employees);
+        List<Login> logins = new ArrayList<>(principals);
+        List<Client> clients = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new Client("client" + i, null));
+            logins.add(new Login("client" + i, null));
+        }
+        List<Manager> managers = new ArrayList<>(employees);
+        List<Trainer> trainers = new ArrayList<>(employees);
+        for (int i = 0; i < employees; i++) {
+            managers.add(new Manager("manager" + i, "m" + i, null, "+1000000" + i));
+            logins.add(new Login("manager" + i, "m" + i));
+            trainers.add(new Trainer("trainer" + i, "t" + i, null, "+2000000" + i));
+            logins.add(new Login("trainer" + i, "t" + i));
+        }
+        registry.getClientStorage().saveAll(clients);
+        registry.getManagerStorage().saveAll(managers);
+        registry.getTrainerStorage().saveAll(trainers);
+        return logins;
+    }
+}
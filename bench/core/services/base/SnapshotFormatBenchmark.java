@@ -0,0 +1,112 @@
+package core.services.base;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import core.models.Passport;
+import core.models.Subscription;
+import core.models.actors.Client;
+import core.services.base.adapters.ModelAdapters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/*
+ * Снимок из N сущностей в форматах JSON и BINARY: размер файла, время записи и загрузки через SnapshotIO,
+ * как при открытии хранилища. Файлы пишутся во временный каталог, files/ не трогается:
+ *   javac -d out -cp lib/gson-2.10.1.jar $(find src bench -name '*.java')
+ *   java -cp out:lib/gson-2.10.1.jar core.services.base.SnapshotFormatBenchmark 100000
+ * */
+public final class SnapshotFormatBenchmark {
+    private static final int WARM_UP = 5;
+    private static final int ROUNDS = 15;
+
+    private SnapshotFormatBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length == 0 ? 100_000 : Integer.parseInt(args[0]);
+        Gson gson = ModelAdapters.registerAll(new GsonBuilder()).create();
+        Path dir = Files.createTempDirectory("snapshot-format");
+        try {
+            System.out.printf("%-13s %-11s %10s %10s %10s%n", "model", "format", "KB", "write ms", "load ms");
+            run(dir, gson, Subscription.class, count, i -> new Subscription(UUID.randomUUID().toString(),
+                    UUID.randomUUID().toString(), LocalDate.of(2024, 1, 1).plusDays(i % 365),
+                    LocalDate.of(2024, 7, 1).plusDays(i % 365), i % 3 != 0), Subscription::getId);
+            run(dir, gson, Client.class, count, i -> {
+                Client client = new Client("Client " + i, UUID.randomUUID().toString());
+                for (int s = 0; s < 5; s++) {
+                    client.addSubscription(UUID.randomUUID().toString());
+                }
+                return client;
+            }, Client::getId);
+            run(dir, gson, Passport.class, count, i -> new Passport("Street " + i, LocalDate.of(1990, 1, 1),
+                    String.format("%06d", i), String.format("%04d", i % 10_000), LocalDate.of(2030, 1, 1)),
+                    Passport::getId);
+        } finally {
+            File[] files = dir.toFile().listFiles();
+            for (File file : files == null ? new File[0] : files) {
+                file.delete();
+            }
+            dir.toFile().delete();
+        }
+    }
+
+    private static <T> void run(Path dir, Gson gson, Class<T> type, int count, IntFunction<T> factory,
+                                Function<T, String> idOf) {
+        Map<String, T> entities = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            T entity = factory.apply(i);
+            entities.put(idOf.apply(entity), entity);
+        }
+        String name = type.getSimpleName().toLowerCase() + "s";
+        File json = dir.resolve(name + SnapshotFormat.JSON.getExtension()).toFile();
+        File binary = dir.resolve(name + SnapshotFormat.BINARY.getExtension()).toFile();
+        measure(type, "JSON", new SnapshotIO<>(gson, type), json, entities);
+        measure(type, "JSON mmap", new SnapshotIO<>(gson, type, true), json, entities);
+        measure(type, "BINARY", new SnapshotIO<>(gson, type), binary, entities);
+    }
+
+    private static <T> void measure(Class<T> type, String format, SnapshotIO<T> snapshotIO, File file, Map<String, T> entities) {
+        for (int i = 0; i < WARM_UP; i++) {
+            write(snapshotIO, file, entities);
+            load(snapshotIO, file);
+        }
+        long[] writeNanos = new long[ROUNDS];
+        long[] loadNanos = new long[ROUNDS];
+        long bytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long started = System.nanoTime();
+            bytes = write(snapshotIO, file, entities);
+            writeNanos[i] = System.nanoTime() - started;
+            started = System.nanoTime();
+            if (load(snapshotIO, file) != entities.size()) {
+                throw new IllegalStateException(file + " lost entities");
+            }
+            loadNanos[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(writeNanos);
+        Arrays.sort(loadNanos);
+        System.out.printf("%-13s %-11s %10d %10.1f %10.1f%n", type.getSimpleName(), format, bytes / 1024,
+                writeNanos[ROUNDS / 2] / 1e6, loadNanos[ROUNDS / 2] / 1e6);
+    }
+
+    private static <T> long write(SnapshotIO<T> snapshotIO, File file, Map<String, T> entities) {
+        return snapshotIO.write(file, entities.entrySet().iterator(), Collections.emptyIterator());
+    }
+
+    private static <T> int load(SnapshotIO<T> snapshotIO, File file) {
+        Map<String, T> loaded = new LinkedHashMap<>();
+        snapshotIO.read(file, loaded::put);
+        return loaded.size();
+    }
+}
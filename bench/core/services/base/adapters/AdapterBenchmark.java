@@ -0,0 +1,127 @@
+package core.services.base.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import core.models.Passport;
+import core.models.Subscription;
+import core.models.actors.Client;
+import core.models.base.Versioned;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+/*
+ * Загрузка и сохранение снимка из N сущностей: рефлексивный Gson (только адаптер LocalDate, как было до
+ * ModelAdapters) против рукописных адаптеров. Снимок - JSON-массив, читается и пишется потоково, как в SnapshotIO.
+ * Файлы не трогает, всё в памяти:
+ *   javac -d out -cp lib/gson-2.10.1.jar $(find src bench -name '*.java')
+ *   java -cp out:lib/gson-2.10.1.jar core.services.base.adapters.AdapterBenchmark 100000
+ * */
+public final class AdapterBenchmark {
+    private static final int WARM_UP = 10;
+    private static final int ROUNDS = 20;
+
+    private AdapterBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int count = args.length == 0 ? 100_000 : Integer.parseInt(args[0]);
+        Gson reflective = new GsonBuilder()
+                .registerTypeAdapter(LocalDate.class, new LocalDateAdapter().nullSafe())
+                .create();
+        Gson handWritten = ModelAdapters.registerAll(new GsonBuilder()).create();
+
+        System.out.printf("%-13s %-12s %10s %10s %10s%n", "model", "adapters", "load ms", "save ms", "KB");
+        run(Subscription.class, count, reflective, handWritten, i -> new Subscription(UUID.randomUUID().toString(),
+                UUID.randomUUID().toString(), LocalDate.of(2024, 1, 1).plusDays(i % 365),
+                LocalDate.of(2024, 7, 1).plusDays(i % 365), i % 3 != 0));
+        run(Client.class, count, reflective, handWritten, i -> {
+            Client client = new Client("Client " + i, UUID.randomUUID().toString());
+            for (int s = 0; s < 5; s++) {
+                client.addSubscription(UUID.randomUUID().toString());
+            }
+            return client;
+        });
+        run(Passport.class, count, reflective, handWritten, i -> new Passport("Street " + i, LocalDate.of(1990, 1, 1),
+                String.format("%06d", i), String.format("%04d", i % 10_000), LocalDate.of(2030, 1, 1)));
+    }
+
+    private static <T extends Versioned> void run(Class<T> type, int count, Gson reflective, Gson handWritten,
+                                                  IntFunction<T> factory) {
+        List<T> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            T entity = factory.apply(i);
+            // Как у уже сохранённых: рукописный адаптер не пишет нулевую version, рефлексивный пишет
+            entity.setVersion(1);
+            entities.add(entity);
+        }
+        // Оба варианта должны писать один и тот же JSON, иначе сравнение бессмысленно
+        String json = save(handWritten, type, entities);
+        if (!json.equals(save(reflective, type, entities))) {
+            System.err.println(type.getSimpleName() + ": reflective and hand-written adapters write different JSON");
+        }
+        measure(type, "reflective", reflective, entities, json);
+        measure(type, "hand-written", handWritten, entities, json);
+    }
+
+    private static <T> void measure(Class<T> type, String name, Gson gson, List<T> entities, String json) {
+        for (int i = 0; i < WARM_UP; i++) {
+            load(gson, type, json);
+            save(gson, type, entities);
+        }
+        long[] loadNanos = new long[ROUNDS];
+        long[] saveNanos = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long started = System.nanoTime();
+            if (load(gson, type, json) != entities.size()) {
+                throw new IllegalStateException("Snapshot lost entities");
+            }
+            loadNanos[i] = System.nanoTime() - started;
+            started = System.nanoTime();
+            save(gson, type, entities);
+            saveNanos[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(loadNanos);
+        Arrays.sort(saveNanos);
+        System.out.printf("%-13s %-12s %10.1f %10.1f %10d%n", type.getSimpleName(), name,
+                loadNanos[ROUNDS / 2] / 1e6, saveNanos[ROUNDS / 2] / 1e6, json.length() / 1024);
+    }
+
+    private static <T> int load(Gson gson, Class<T> type, String json) {
+        List<T> loaded = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                loaded.add(gson.fromJson(reader, type));
+            }
+            reader.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return loaded.size();
+    }
+
+    private static <T> String save(Gson gson, Class<T> type, List<T> entities) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginArray();
+            for (T entity : entities) {
+                gson.toJson(entity, type, writer);
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
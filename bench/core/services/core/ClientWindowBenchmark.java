@@ -0,0 +1,129 @@
+package core.services.core;
+
+import core.models.Subscription;
+import core.models.actors.Client;
+import core.models.actors.Trainer;
+import core.models.base.TrainingClass;
+import core.models.enums.TrainingLevel;
+import core.services.ServiceRegistry;
+import core.services.base.StorageBackends;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Latency of what ClientWindow reads when it opens: the client's subscriptions, their classes and
+ * the trainer of each class. The club is filled with synthetic data of the given sizes (number of
+ * subscriptions, 5 per client), so the numbers show whether a client's window depends on the club size.
+ * Runs on the in-memory backend and never touches files/. 1M subscriptions need a few GB of heap:
+ *   javac -d out -cp lib/gson-2.10.1.jar $(find src bench -name '*.java')
+ *   java -Xmx4g -cp out:lib/gson-2.10.1.jar -Ddanceclub.storage=memory core.services.core.ClientWindowBenchmark 10000 100000 1000000
+ * */
+public final class ClientWindowBenchmark {
+    private static final int SUBSCRIPTIONS_PER_CLIENT = 5;
+    private static final int TRAINERS = 50;
+    private static final int SAMPLES = 2_000;
+
+    private ClientWindowBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        String storage = System.getProperty(StorageBackends.STORAGE_PROPERTY);
+        if (storage == null) {
+            System.setProperty(StorageBackends.STORAGE_PROPERTY, "memory");
+        } else if (StorageBackends.configured() != StorageBackends.Kind.MEMORY) {
+            System.err.println("ClientWindowBenchmark fills the club with synthetic data and only runs with -D"
+                    + StorageBackends.STORAGE_PROPERTY + "=memory");
+            System.exit(1);
+        }
+
+        int[] sizes = args.length == 0
+                ? new int[]{10_000, 100_000, 1_000_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        System.out.printf("%12s %10s %10s %10s %10s %10s%n", "subscriptions", "fill ms", "avg us", "p50 us", "p99 us", "max us");
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int subscriptionCount) {
+        ServiceRegistry registry = new ServiceRegistry();
+        long fillStarted = System.nanoTime();
+        List<String> clientIds = fill(registry, subscriptionCount);
+        long fillNanos = System.nanoTime() - fillStarted;
+
+        ClientService clientService = registry.getClientService();
+        TrainerService trainerService = registry.getTrainerService();
+        Random random = new Random(42);
+        // Warm-up on other clients, so JIT settles before the measured samples
+        for (int i = 0; i < SAMPLES; i++) {
+            openClientWindow(clientService, trainerService, clientIds.get(random.nextInt(clientIds.size())));
+        }
+
+        long[] nanos = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            String clientId = clientIds.get(random.nextInt(clientIds.size()));
+            long started = System.nanoTime();
+            openClientWindow(clientService, trainerService, clientId);
+            nanos[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%12d %10.0f %10.1f %10.1f %10.1f %10.1f%n", subscriptionCount, fillNanos / 1e6,
+                Arrays.stream(nanos).average().orElse(0) / 1e3, nanos[SAMPLES / 2] / 1e3,
+                nanos[SAMPLES * 99 / 100] / 1e3, nanos[SAMPLES - 1] / 1e3);
+        registry.close();
+    }
+
+    // Same reads as ClientWindow's two tabs
+    private static int openClientWindow(ClientService clientService, TrainerService trainerService, String clientId) {
+        int rows = clientService.getClientSubscriptions(clientId).size();
+        for (TrainingClass trainingClass : clientService.getClientClasses(clientId)) {
+            Trainer trainer = trainerService.getTrainerById(trainingClass.getTrainerId());
+            rows += trainer != null ? 1 : 0;
+        }
+        return rows;
+    }
+
+    // Every owner list is filled in step with the entities, as the services would leave it
+    private static List<String> fill(ServiceRegistry registry, int subscriptionCount) {
+        int clientCount = Math.max(1, subscriptionCount / SUBSCRIPTIONS_PER_CLIENT);
+        int classCount = Math.max(SUBSCRIPTIONS_PER_CLIENT, subscriptionCount / 10);
+
+        List<Trainer> trainers = new ArrayList<>(TRAINERS);
+        for (int i = 0; i < TRAINERS; i++) {
+            trainers.add(new Trainer("Trainer " + i, "t" + i, null, "+1000000" + i));
+        }
+        List<Client> clients = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new Client("Client " + i, null));
+        }
+        List<TrainingClass> classes = new ArrayList<>(classCount);
+        TrainingLevel[] levels = TrainingLevel.values();
+        for (int i = 0; i < classCount; i++) {
+            Trainer trainer = trainers.get(i % TRAINERS);
+            TrainingClass trainingClass = new TrainingClass("Dance " + i, levels[i % levels.length], trainer.getId(),
+                    clients.get(i % clientCount).getId(), "Monday, Wednesday");
+            trainer.addTrainingClass(trainingClass.getId());
+            classes.add(trainingClass);
+        }
+        List<Subscription> subscriptions = new ArrayList<>(subscriptionCount);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < subscriptionCount; i++) {
+            Client client = clients.get(i / SUBSCRIPTIONS_PER_CLIENT % clientCount);
+            // Consecutive classes per client, so a client never has two subscriptions to one class
+            TrainingClass trainingClass = classes.get(i % classCount);
+            Subscription subscription = new Subscription(client.getId(), trainingClass.getId(), start, start.plusMonths(6), i % 3 != 0);
+            client.addSubscription(subscription.getId());
+            subscriptions.add(subscription);
+        }
+
+        registry.getTrainerStorage().saveAll(trainers);
+        registry.getTrainingClassStorage().saveAll(classes);
+        registry.getClientStorage().saveAll(clients);
+        registry.getSubscriptionStorage().saveAll(subscriptions);
+        return clients.stream().map(Client::getId).toList();
+    }
+}
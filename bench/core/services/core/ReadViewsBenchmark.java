@@ -0,0 +1,122 @@
+package core.services.core;
+
+import core.models.actors.Client;
+import core.models.actors.Trainer;
+import core.services.ServiceRegistry;
+import core.services.base.JsonStorageService;
+import core.services.base.StorageBackends;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Allocation and time per call of the storage read paths: getAll(), which copies every entity into a new
+ * list, against the copy-free values(), forEach() and stream(). The last two rows are the occupancy check
+ * PassportManagementService runs before deleting a passport, as it was (getAllTrainers()/getAllClients()
+ * and a stream over each copy) and as it is now (streamTrainers()/streamClients()). The passport belongs to
+ * nobody, so every call scans all trainers and clients. Bytes are counted by the JVM per thread.
+ * Runs on the in-memory backend and never touches files/:
+ *   javac -d out -cp lib/gson-2.10.1.jar $(find src bench -name '*.java')
+ *   java -cp out:lib/gson-2.10.1.jar -Ddanceclub.storage=memory core.services.core.ReadViewsBenchmark 10000 100000
+ * */
+public final class ReadViewsBenchmark {
+    private static final int TRAINERS = 50;
+    private static final int WARM_UP = 200;
+    private static final int CALLS = 200;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private ReadViewsBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        String storage = System.getProperty(StorageBackends.STORAGE_PROPERTY);
+        if (storage == null) {
+            System.setProperty(StorageBackends.STORAGE_PROPERTY, "memory");
+        } else if (StorageBackends.configured() != StorageBackends.Kind.MEMORY) {
+            System.err.println("ReadViewsBenchmark fills the club with synthetic data and only runs with -D"
+                    + StorageBackends.STORAGE_PROPERTY + "=memory");
+            System.exit(1);
+        }
+
+        int[] sizes = args.length == 0
+                ? new int[]{10_000, 100_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        System.out.printf("%8s %-34s %14s %10s%n", "clients", "read", "bytes/call", "us/call");
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int clientCount) {
+        ServiceRegistry registry = new ServiceRegistry();
+        fill(registry, clientCount);
+        JsonStorageService<Client> clients = registry.getClientStorage();
+        ClientService clientService = registry.getClientService();
+        TrainerService trainerService = registry.getTrainerService();
+        String freePassportId = UUID.randomUUID().toString();
+
+        measure(clientCount, "getAll().size()", () -> clients.getAll().size() == clientCount);
+        measure(clientCount, "values() iteration", () -> {
+            int count = 0;
+            for (Client client : clients.values()) {
+                count += client != null ? 1 : 0;
+            }
+            return count == clientCount;
+        });
+        measure(clientCount, "forEach()", () -> {
+            int[] count = new int[1];
+            clients.forEach(client -> count[0]++);
+            return count[0] == clientCount;
+        });
+        measure(clientCount, "stream().anyMatch()", () ->
+                clients.stream().anyMatch(client -> freePassportId.equals(client.getPassportId())));
+        measure(clientCount, "passportOccupiedByUsers, getAll", () ->
+                trainerService.getAllTrainers().stream()
+                        .anyMatch(trainer -> freePassportId.equals(trainer.getPassportId()))
+                        || clientService.getAllClients().stream()
+                        .anyMatch(client -> freePassportId.equals(client.getPassportId())));
+        measure(clientCount, "passportOccupiedByUsers, stream", () ->
+                trainerService.streamTrainers()
+                        .anyMatch(trainer -> freePassportId.equals(trainer.getPassportId()))
+                        || clientService.streamClients()
+                        .anyMatch(client -> freePassportId.equals(client.getPassportId())));
+        registry.close();
+    }
+
+    private static void measure(int clientCount, String read, BooleanSupplier call) {
+        // The result is kept, so JIT cannot drop the scan
+        int sink = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            sink += call.getAsBoolean() ? 1 : 0;
+        }
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long started = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            sink += call.getAsBoolean() ? 1 : 0;
+        }
+        long nanos = System.nanoTime() - started;
+        long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+        System.out.printf("%8d %-34s %14d %10.1f%s%n", clientCount, read, bytes / CALLS, nanos / 1e3 / CALLS,
+                sink < 0 ? "" : "");
+    }
+
+    private static void fill(ServiceRegistry registry, int clientCount) {
+        List<Trainer> trainers = new ArrayList<>(TRAINERS);
+        for (int i = 0; i < TRAINERS; i++) {
+            trainers.add(new Trainer("Trainer " + i, "t" + i, UUID.randomUUID().toString(), "+1000000" + i));
+        }
+        List<Client> clients = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new Client("Client " + i, UUID.randomUUID().toString()));
+        }
+        registry.getTrainerStorage().saveAll(trainers);
+        registry.getClientStorage().saveAll(clients);
+    }
+}
@@ -1,7 +1,4 @@
-import core.services.AuthService;
-import core.services.storage.ClientStorageService;
-import core.services.storage.ManagerStorageService;
-import core.services.storage.TrainerStorageService;
+import core.services.ServiceRegistry;
 import ui.AuthWindow;
 
 import javax.swing.*;
@@ -19,13 +16,13 @@ public class Main {
             System.err.println("Failed to set Nimbus Look and Feel: " + e.getMessage());
         }
 
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.bootstrap();
+        // Окна закрываются через EXIT_ON_CLOSE: хранилища сбрасываются и отчёт о записи печатается в shutdown hook
+        Runtime.getRuntime().addShutdownHook(new Thread(registry::close, "registry-close"));
+
         SwingUtilities.invokeLater(() -> {
-            AuthService authService = new AuthService(
-                    new ClientStorageService(),
-                    new ManagerStorageService(),
-                    new TrainerStorageService()
-            );
-            AuthWindow authWindow = new AuthWindow(authService);
+            AuthWindow authWindow = new AuthWindow(registry);
             authWindow.setVisible(true);
         });
     }
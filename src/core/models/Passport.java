@@ -1,15 +1,18 @@
 package core.models;
 
+import core.models.base.Versioned;
+
 import java.time.LocalDate;
 import java.util.UUID;
 
-public class Passport {
+public class Passport implements Versioned {
     private String id;
     private String address;
     private LocalDate birthDate;
     private String number;
     private String series;
     private LocalDate overdue;
+    private long version;
 
     // Default constructor for Gson
     public Passport() {
@@ -84,6 +87,16 @@ public class Passport {
         this.overdue = overdue;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return getSeries() + " " + getNumber();
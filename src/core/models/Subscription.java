@@ -1,11 +1,13 @@
 package core.models;
 
+import core.models.base.Versioned;
+
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-public class Subscription {
+public class Subscription implements Versioned {
     private String id;
     private String clientId;
     private String trainingClassId;
@@ -13,6 +15,7 @@ public class Subscription {
     private LocalDate endDate;
     private boolean isPaid;
     private List<LocalDate> attendanceDates;
+    private long version;
 
     // Default constructor for Gson
     public Subscription() {
@@ -101,4 +104,14 @@ public class Subscription {
     public void addAttendanceDate(LocalDate date) {
         this.attendanceDates.add(date);
     }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -1,15 +1,18 @@
 package core.models.actors;
 
+import core.models.base.Versioned;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 
-public class Client {
+public class Client implements Versioned {
     private String id;
     private String name;
     private String passportId;
     private List<String> subscriptionIds;
+    private long version;
 
     // Default constructor for Gson
     public Client() {
@@ -69,7 +72,25 @@ public class Client {
         if (this.subscriptionIds == null) {
             this.subscriptionIds = new ArrayList<>();
         }
-        this.subscriptionIds.add(subscriptionId);
+        if (!this.subscriptionIds.contains(subscriptionId)) {
+            this.subscriptionIds.add(subscriptionId);
+        }
+    }
+
+    public void removeSubscription(String subscriptionId) {
+        if (this.subscriptionIds != null) {
+            this.subscriptionIds.removeIf(subscriptionId::equals);
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
     }
 
     @Override
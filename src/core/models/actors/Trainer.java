@@ -33,11 +33,13 @@ public class Trainer extends Employee {
     }
 
     public void addTrainingClass(String trainingClassId) {
-        this.trainingClassIds.add(trainingClassId);
+        if (!this.trainingClassIds.contains(trainingClassId)) {
+            this.trainingClassIds.add(trainingClassId);
+        }
     }
 
     public void removeTrainingClass(String trainingClassId){
-        this.trainingClassIds.remove(trainingClassId);
+        this.trainingClassIds.removeIf(trainingClassId::equals);
     }
 
     @Override
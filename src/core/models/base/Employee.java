@@ -2,12 +2,13 @@ package core.models.base;
 
 import java.util.UUID;
 
-public abstract class Employee {
+public abstract class Employee implements Versioned {
     private String id;
     private String name;
     private String password;
     private String passportId;
     private String phone;
+    private long version;
 
     protected Employee() {
     }
@@ -76,5 +77,15 @@ public abstract class Employee {
     public void setPhone(String phone) {
         this.phone = phone;
     }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
 
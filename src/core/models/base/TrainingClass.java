@@ -7,13 +7,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-public class TrainingClass {
+public class TrainingClass implements Versioned {
     private String id;
     private String danceType;
     private TrainingLevel level;
     private String trainerId;
     private String clientId;
     private String schedule;
+    private long version;
 
     // Default constructor for Gson
     public TrainingClass() {
@@ -89,6 +90,16 @@ public class TrainingClass {
         this.clientId = clientId;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return getDanceType();
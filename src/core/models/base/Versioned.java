@@ -0,0 +1,11 @@
+package core.models.base;
+
+/*
+ * Номер версии сущности. Хранилище сверяет его в save() и увеличивает при каждой записи,
+ * поэтому save() устаревшей копии (её уже изменил другой экземпляр приложения) отклоняется.
+ * */
+public interface Versioned {
+    long getVersion();
+
+    void setVersion(long version);
+}
@@ -0,0 +1,85 @@
+package core.services;
+
+import core.models.enums.UserRole;
+import core.services.base.JsonStorageService;
+import core.services.base.StorageEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/*
+ * Все, кто может войти, по имени: клиенты, менеджеры и тренеры в одной хеш-таблице.
+ * Заполняется из хранилищ при watch() и дальше обновляется их событиями - в том числе
+ * изменениями, пришедшими с другой стойки. Чтение без блокировок, запись под this.
+ * */
+public class PrincipalDirectory {
+    // password == null - вход без пароля (клиенты)
+    public record Principal(UserRole role, String id, String name, String password) {
+        public boolean accepts(String candidate) {
+            return password == null || password.equals(candidate);
+        }
+    }
+
+    // Порядок внутри списка - порядок ролей в UserRole, так же проверял и старый authenticate
+    private static final Comparator<Principal> BY_ROLE = Comparator.comparing(Principal::role);
+
+    private final Map<String, List<Principal>> byName = new ConcurrentHashMap<>();
+    private final Map<String, Principal> byId = new ConcurrentHashMap<>(); // Нужен, чтобы при переименовании убрать старое имя
+
+    public synchronized <T> void watch(JsonStorageService<T> storage, UserRole role, Function<T, Principal> toPrincipal) {
+        storage.addListener(event -> onChange(storage, role, toPrincipal, event));
+        storage.forEach(entity -> put(toPrincipal.apply(entity)));
+    }
+
+    // Все с этим именем; пустой список, если таких нет
+    public List<Principal> lookup(String name) {
+        return byName.getOrDefault(name, List.of());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private synchronized <T> void onChange(JsonStorageService<T> storage, UserRole role,
+                                           Function<T, Principal> toPrincipal, StorageEvent<T> event) {
+        switch (event.type()) {
+            case SAVED -> put(toPrincipal.apply(event.entity()));
+            case DELETED -> remove(event.id());
+            case RELOADED -> {
+                byId.values().stream()
+                        .filter(principal -> principal.role() == role)
+                        .map(Principal::id)
+                        .toList()
+                        .forEach(this::remove);
+                storage.forEach(entity -> put(toPrincipal.apply(entity)));
+            }
+        }
+    }
+
+    private void put(Principal principal) {
+        remove(principal.id());
+        byId.put(principal.id(), principal);
+        if (principal.name() != null) {
+            byName.compute(principal.name(), (name, principals) -> {
+                List<Principal> updated = principals == null ? new ArrayList<>() : new ArrayList<>(principals);
+                updated.add(principal);
+                updated.sort(BY_ROLE);
+                return List.copyOf(updated);
+            });
+        }
+    }
+
+    private void remove(String id) {
+        Principal previous = byId.remove(id);
+        if (previous == null || previous.name() == null) {
+            return;
+        }
+        byName.computeIfPresent(previous.name(), (name, principals) -> {
+            List<Principal> updated = principals.stream()
+                    .filter(principal -> !principal.id().equals(id))
+                    .toList();
+            return updated.isEmpty() ? null : updated;
+        });
+    }
+}
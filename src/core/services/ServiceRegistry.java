@@ -0,0 +1,344 @@
+package core.services;
+
+import core.services.base.JsonStorageService;
+import core.services.core.*;
+import core.services.management.PassportManagementService;
+import core.services.management.SubscriptionManagementService;
+import core.services.storage.*;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+ * Один экземпляр на всё приложение (создаётся в Main). Хранилища и сервисы создаются
+ * при первом обращении и дальше общие для всех окон и повторных логинов,
+ * поэтому JSON-файлы читаются один раз и все окна видят одни и те же данные.
+ * Main вызывает bootstrap(), чтобы хранилища грузились параллельно, пока показывается окно входа.
+ * */
+public class ServiceRegistry {
+    private CompletableFuture<ClientStorageService> clientStorage;
+    private CompletableFuture<ManagerStorageService> managerStorage;
+    private CompletableFuture<TrainerStorageService> trainerStorage;
+    private CompletableFuture<TrainingClassStorageService> trainingClassStorage;
+    private CompletableFuture<SubscriptionStorageService> subscriptionStorage;
+    private CompletableFuture<PassportStorageService> passportStorage;
+    private Executor loader = Runnable::run; // Без bootstrap() хранилище грузится в потоке, который его запросил
+    private final Map<String, Long> loadNanos = new ConcurrentHashMap<>();
+    private final Map<String, JsonStorageService.LoadStats> loadStats = new ConcurrentHashMap<>();
+    private final Map<String, JsonStorageService<?>> loaded = new ConcurrentHashMap<>(); // Для отчёта о записи при close()
+
+    private CompletableFuture<AuthService> authService;
+    private CompletableFuture<PassportService> passportService;
+    private CompletableFuture<SubscriptionService> subscriptionService;
+    private CompletableFuture<TrainingClassService> trainingClassService;
+    private CompletableFuture<TrainerService> trainerService;
+    private CompletableFuture<ClientService> clientService;
+    private CompletableFuture<PassportManagementService> passportManagementService;
+    private CompletableFuture<SubscriptionManagementService> subscriptionManagementService;
+
+    /*
+    * Запускает загрузку всех хранилищ параллельно на небольшом пуле и сразу возвращается.
+    * Геттеры хранилищ ждут только своё хранилище; когда загрузятся все, печатается разбивка по типам.
+    * */
+    public CompletableFuture<Void> bootstrap() {
+        long started = System.nanoTime();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(6, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "storage-bootstrap-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<Void> ready;
+        synchronized (this) {
+            loader = pool;
+            ready = CompletableFuture.allOf(
+                    clientStorageReady(),
+                    managerStorageReady(),
+                    trainerStorageReady(),
+                    trainingClassStorageReady(),
+                    subscriptionStorageReady(),
+                    passportStorageReady());
+            loader = Runnable::run;
+        }
+        return ready.whenComplete((ignored, error) -> {
+            pool.shutdown();
+            printStartupReport(System.nanoTime() - started);
+        });
+    }
+
+    /*
+    * Время конструктора (чтение + индексы) и LoadStats каждого хранилища. Само хранилище при загрузке
+    * ничего не печатает, поэтому это единственный отчёт о старте.
+    * */
+    private void printStartupReport(long wallNanos) {
+        StringBuilder report = new StringBuilder(String.format("Storages ready in %.1f ms (sum of loads %.1f ms)%n",
+                wallNanos / 1e6, loadNanos.values().stream().mapToLong(Long::longValue).sum() / 1e6));
+        loadNanos.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> {
+                    JsonStorageService.LoadStats stats = loadStats.get(entry.getKey());
+                    report.append(String.format("  %-14s %8.1f ms %8d entities %10d bytes %6d journal records %10.0f entities/s",
+                            entry.getKey(), entry.getValue() / 1e6, stats.entities(), stats.bytesRead(),
+                            stats.journalRecords(), stats.entitiesPerSecond()));
+                    if (stats.migrated()) {
+                        report.append(", snapshot migrated");
+                    }
+                    if (stats.recoveredTransactions() > 0) {
+                        report.append(", recovered ").append(stats.recoveredTransactions()).append(" transaction(s)");
+                    }
+                    report.append(System.lineSeparator());
+                });
+        System.out.print(report);
+    }
+
+    // Вызывать под this
+    private <S extends JsonStorageService<?>> CompletableFuture<S> load(String type, Supplier<S> constructor) {
+        return CompletableFuture.supplyAsync(() -> {
+            long started = System.nanoTime();
+            S storage = constructor.get();
+            loadNanos.put(type, System.nanoTime() - started);
+            loadStats.put(type, storage.getLoadStats());
+            loaded.put(type, storage);
+            return storage;
+        }, loader);
+    }
+
+    private static <S> S await(CompletableFuture<S> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Storages: *Ready() - готовность без ожидания, get*() ждёт загрузки
+    public synchronized CompletableFuture<ClientStorageService> clientStorageReady() {
+        if (clientStorage == null) {
+            clientStorage = load("Client", ClientStorageService::new);
+        }
+        return clientStorage;
+    }
+
+    public ClientStorageService getClientStorage() {
+        return await(clientStorageReady());
+    }
+
+    public synchronized CompletableFuture<ManagerStorageService> managerStorageReady() {
+        if (managerStorage == null) {
+            managerStorage = load("Manager", ManagerStorageService::new);
+        }
+        return managerStorage;
+    }
+
+    public ManagerStorageService getManagerStorage() {
+        return await(managerStorageReady());
+    }
+
+    public synchronized CompletableFuture<TrainerStorageService> trainerStorageReady() {
+        if (trainerStorage == null) {
+            trainerStorage = load("Trainer", TrainerStorageService::new);
+        }
+        return trainerStorage;
+    }
+
+    public TrainerStorageService getTrainerStorage() {
+        return await(trainerStorageReady());
+    }
+
+    public synchronized CompletableFuture<TrainingClassStorageService> trainingClassStorageReady() {
+        if (trainingClassStorage == null) {
+            trainingClassStorage = load("TrainingClass", TrainingClassStorageService::new);
+        }
+        return trainingClassStorage;
+    }
+
+    public TrainingClassStorageService getTrainingClassStorage() {
+        return await(trainingClassStorageReady());
+    }
+
+    public synchronized CompletableFuture<SubscriptionStorageService> subscriptionStorageReady() {
+        if (subscriptionStorage == null) {
+            subscriptionStorage = load("Subscription", SubscriptionStorageService::new);
+        }
+        return subscriptionStorage;
+    }
+
+    public SubscriptionStorageService getSubscriptionStorage() {
+        return await(subscriptionStorageReady());
+    }
+
+    public synchronized CompletableFuture<PassportStorageService> passportStorageReady() {
+        if (passportStorage == null) {
+            passportStorage = load("Passport", PassportStorageService::new);
+        }
+        return passportStorage;
+    }
+
+    public PassportStorageService getPassportStorage() {
+        return await(passportStorageReady());
+    }
+
+    // Сбрасывает и закрывает уже загруженные хранилища; без вызова то же делает shutdown hook при выходе
+    public synchronized void close() {
+        Stream.of(clientStorage, managerStorage, trainerStorage, trainingClassStorage, subscriptionStorage, passportStorage)
+                .filter(future -> future != null && future.isDone() && !future.isCompletedExceptionally())
+                .forEach(future -> future.join().close());
+        printWriteReport();
+    }
+
+    /*
+    * WriteStats каждого загруженного хранилища за сессию, пара к отчёту о старте: сколько изменений записано,
+    * сколько save() пропущено как неизменные и сколько байт ушло на диск. Печатается после close(), когда всё сброшено.
+    * */
+    private void printWriteReport() {
+        if (loaded.isEmpty()) {
+            return;
+        }
+        StringBuilder report = new StringBuilder("Storage writes this session")
+                .append(System.lineSeparator());
+        loaded.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().getWriteStats()))
+                .sorted(Comparator.comparingLong(
+                        (Map.Entry<String, JsonStorageService.WriteStats> entry) -> entry.getValue().bytesWritten()).reversed())
+                .forEach(entry -> {
+                    JsonStorageService.WriteStats stats = entry.getValue();
+                    report.append(String.format("  %-14s %8d mutations %8d skipped saves %10d bytes written%n",
+                            entry.getKey(), stats.mutations(), stats.skippedSaves(), stats.bytesWritten()));
+                });
+        System.out.print(report);
+    }
+
+    /*
+    * Services: как и хранилища, *ServiceReady() только собирает future из готовности зависимостей
+    * и никогда не ждёт под this; сервис создаётся тем потоком, который завершил последнюю зависимость.
+    * get*Service() ждёт уже вне монитора, поэтому медленная загрузка одного хранилища
+    * не блокирует другие потоки, которые запрашивают реестр.
+    * */
+    public synchronized CompletableFuture<AuthService> authServiceReady() {
+        if (authService == null) {
+            authService = clientStorageReady()
+                    .thenCombine(managerStorageReady(), Map::entry)
+                    .thenCombine(trainerStorageReady(),
+                            (storages, trainers) -> new AuthService(storages.getKey(), storages.getValue(), trainers));
+        }
+        return authService;
+    }
+
+    public AuthService getAuthService() {
+        return await(authServiceReady());
+    }
+
+    public synchronized CompletableFuture<PassportService> passportServiceReady() {
+        if (passportService == null) {
+            passportService = passportStorageReady().thenApply(PassportService::new);
+        }
+        return passportService;
+    }
+
+    public PassportService getPassportService() {
+        return await(passportServiceReady());
+    }
+
+    public synchronized CompletableFuture<SubscriptionService> subscriptionServiceReady() {
+        if (subscriptionService == null) {
+            subscriptionService = subscriptionStorageReady().thenCombine(clientStorageReady(), SubscriptionService::new);
+        }
+        return subscriptionService;
+    }
+
+    public SubscriptionService getSubscriptionService() {
+        return await(subscriptionServiceReady());
+    }
+
+    public synchronized CompletableFuture<TrainingClassService> trainingClassServiceReady() {
+        if (trainingClassService == null) {
+            trainingClassService = trainerStorageReady()
+                    .thenCombine(trainingClassStorageReady(), Map::entry)
+                    .thenCombine(subscriptionServiceReady(),
+                            (storages, subscriptions) -> new TrainingClassService(storages.getKey(), storages.getValue(), subscriptions));
+        }
+        return trainingClassService;
+    }
+
+    public TrainingClassService getTrainingClassService() {
+        return await(trainingClassServiceReady());
+    }
+
+    public synchronized CompletableFuture<TrainerService> trainerServiceReady() {
+        if (trainerService == null) {
+            trainerService = trainerStorageReady()
+                    .thenCombine(trainingClassServiceReady(), Map::entry)
+                    .thenCombine(passportServiceReady(),
+                            (services, passports) -> new TrainerService(services.getKey(), services.getValue(), passports));
+        }
+        return trainerService;
+    }
+
+    public TrainerService getTrainerService() {
+        return await(trainerServiceReady());
+    }
+
+    public synchronized CompletableFuture<ClientService> clientServiceReady() {
+        if (clientService == null) {
+            CompletableFuture<Map.Entry<ClientStorageService, SubscriptionStorageService>> storages =
+                    clientStorageReady().thenCombine(subscriptionStorageReady(), Map::entry);
+            CompletableFuture<Map.Entry<TrainingClassService, PassportService>> services =
+                    trainingClassServiceReady().thenCombine(passportServiceReady(), Map::entry);
+            clientService = storages.thenCombine(services, (s, d) -> new ClientService(
+                    s.getKey(),
+                    s.getValue(),
+                    d.getKey(),
+                    d.getValue()
+            ));
+        }
+        return clientService;
+    }
+
+    public ClientService getClientService() {
+        return await(clientServiceReady());
+    }
+
+    public synchronized CompletableFuture<PassportManagementService> passportManagementServiceReady() {
+        if (passportManagementService == null) {
+            passportManagementService = clientServiceReady()
+                    .thenCombine(passportServiceReady(), Map::entry)
+                    .thenCombine(trainerServiceReady(), (services, trainers) -> new PassportManagementService(
+                            services.getKey(),
+                            services.getValue(),
+                            trainers
+                    ));
+        }
+        return passportManagementService;
+    }
+
+    public PassportManagementService getPassportManagementService() {
+        return await(passportManagementServiceReady());
+    }
+
+    public synchronized CompletableFuture<SubscriptionManagementService> subscriptionManagementServiceReady() {
+        if (subscriptionManagementService == null) {
+            CompletableFuture<Map.Entry<SubscriptionService, ClientService>> first =
+                    subscriptionServiceReady().thenCombine(clientServiceReady(), Map::entry);
+            CompletableFuture<Map.Entry<TrainingClassService, TrainerService>> second =
+                    trainingClassServiceReady().thenCombine(trainerServiceReady(), Map::entry);
+            subscriptionManagementService = first.thenCombine(second, (f, s) -> new SubscriptionManagementService(
+                    f.getKey(),
+                    f.getValue(),
+                    s.getKey(),
+                    s.getValue()
+            ));
+        }
+        return subscriptionManagementService;
+    }
+
+    public SubscriptionManagementService getSubscriptionManagementService() {
+        return await(subscriptionManagementServiceReady());
+    }
+}
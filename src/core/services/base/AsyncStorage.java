@@ -0,0 +1,81 @@
+package core.services.base;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/*
+ * Асинхронный фасад над JsonStorageService для UI: операции выполняются на общем потоке storage-io,
+ * вызывающий поток (обычно EDT) сразу получает CompletableFuture.
+ * Один поток - операции выполняются в порядке вызова (save, затем delete той же сущности не переставятся).
+ * Очередь ограничена: когда она полна, операция не ставится, а её future сразу падает с RejectedExecutionException -
+ * ждать места в очереди нельзя, вызывающий обычно EDT.
+ * Future операций записи завершается, когда изменение на диске: в group commit mode это следующий flush,
+ * и если другой экземпляр успел перебить сущность, future падает со StaleEntityException.
+ * Получить фасад - JsonStorageService.async().
+ * */
+public class AsyncStorage<T> {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final ThreadPoolExecutor IO = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            runnable -> {
+                Thread thread = new Thread(runnable, "storage-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final JsonStorageService<T> storage;
+
+    AsyncStorage(JsonStorageService<T> storage) {
+        this.storage = storage;
+    }
+
+    // Отказ переполненной очереди (AbortPolicy) возвращается как упавший future, а не исключением у вызывающего
+    private static <R> CompletableFuture<R> submit(Supplier<R> action) {
+        try {
+            return CompletableFuture.supplyAsync(action, IO);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Storage I/O queue is full (" + QUEUE_CAPACITY + " operations waiting)", e));
+        }
+    }
+
+    public CompletableFuture<Void> saveAsync(T entity) {
+        return submit(() -> storage.saveTracked(entity)).thenCompose(written -> written);
+    }
+
+    public CompletableFuture<Void> saveAllAsync(Collection<T> entities) {
+        List<T> snapshot = List.copyOf(entities);
+        return submit(() -> storage.saveAllTracked(snapshot)).thenCompose(written -> written);
+    }
+
+    public CompletableFuture<Void> deleteAsync(String id) {
+        return submit(() -> storage.deleteTracked(id)).thenCompose(written -> written);
+    }
+
+    public CompletableFuture<T> updateAsync(String id, UnaryOperator<T> updater) {
+        return submit(() -> storage.updateTracked(id, updater))
+                .thenCompose(tracked -> tracked.written().thenApply(ignored -> tracked.result()));
+    }
+
+    public CompletableFuture<T> getByIdAsync(String id) {
+        return submit(() -> storage.getById(id));
+    }
+
+    public CompletableFuture<List<T>> getAllAsync() {
+        return submit(storage::getAll);
+    }
+
+    public CompletableFuture<List<T>> findByAsync(String indexName, String key) {
+        return submit(() -> storage.findBy(indexName, key));
+    }
+
+    public CompletableFuture<Void> flushAsync() {
+        return submit(() -> {
+            storage.flush();
+            return null;
+        });
+    }
+}
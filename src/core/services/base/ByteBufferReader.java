@@ -0,0 +1,45 @@
+package core.services.base;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Reader, который декодирует UTF-8 из ByteBuffer прямо в массив вызывающего (для JsonReader - в его собственный буфер).
+ * Промежуточных char-копий нет.
+ * */
+class ByteBufferReader extends Reader {
+    private final ByteBuffer buffer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean flushed;
+
+    ByteBufferReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        CharBuffer out = CharBuffer.wrap(chars, offset, length);
+        decoder.decode(buffer, out, true);
+        if (!buffer.hasRemaining() && !flushed) {
+            flushed = decoder.flush(out).isUnderflow();
+        }
+        int count = out.position() - offset;
+        if (count == 0 && flushed) {
+            return -1;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,267 @@
+package core.services.base;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*
+ * Общий журнал транзакций для всех хранилищ (files/commit.journal).
+ * BEGIN     - все изменения транзакции, сгруппированные по хранилищу (ключ - dataFolder);
+ * APPLIED   - хранилище применило свою часть при восстановлении после сбоя;
+ * COMMITTED - транзакция применена во всех хранилищах.
+ * Пока у BEGIN нет COMMITTED, каждое хранилище при загрузке доигрывает свою часть.
+ * Журнал общий для всех экземпляров приложения на томе: чтение, дописывание и обрезка идут под
+ * FileChannel.lock на commit.journal.lock. Каждая запись помечена владельцем (процессом). Пока процесс жив,
+ * он держит блокировку на commit.<владелец>.owner, поэтому его незавершённые BEGIN - это транзакции в работе,
+ * а не упавшие, и другие экземпляры их не доигрывают.
+ * */
+class CommitJournal {
+    private static final CommitJournal SHARED = new CommitJournal("files" + File.separator + "commit.journal");
+    private static final String OWNER = StorageJournal.ORIGIN;
+
+    private final File file;
+    private final File lockFile;
+    private FileChannel lockChannel;
+    private FileChannel ownerChannel; // Открыт, пока жив процесс; блокировка на нём - признак жизни владельца
+
+    CommitJournal(String filePath) {
+        this.file = new File(filePath);
+        this.lockFile = new File(filePath + ".lock");
+    }
+
+    static CommitJournal shared() {
+        return SHARED;
+    }
+
+    synchronized void begin(String txId, JsonObject changesByStorage) {
+        holdOwnerLock();
+        JsonObject record = new JsonObject();
+        record.addProperty("type", "BEGIN");
+        record.addProperty("tx", txId);
+        record.addProperty("owner", OWNER);
+        record.add("storages", changesByStorage);
+        withFileLock(() -> append(record, true));
+    }
+
+    synchronized void committed(String txId) {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", "COMMITTED");
+        record.addProperty("tx", txId);
+        record.addProperty("owner", OWNER);
+        withFileLock(() -> {
+            append(record, false);
+            truncateIfSettled();
+        });
+    }
+
+    // Записи незавершённых транзакций мёртвых владельцев, которые хранилище ещё не применило, от старых к новым
+    synchronized List<JsonArray> pendingFor(String storageKey) {
+        List<JsonArray> pending = new ArrayList<>();
+        withFileLock(() -> {
+            for (PendingTransaction transaction : readRecoverable(storageKey)) {
+                pending.add(transaction.changes.getAsJsonArray(storageKey));
+            }
+        });
+        return pending;
+    }
+
+    synchronized void markRecovered(String storageKey) {
+        withFileLock(() -> {
+            for (PendingTransaction transaction : readRecoverable(storageKey)) {
+                JsonObject record = new JsonObject();
+                record.addProperty("type", "APPLIED");
+                record.addProperty("tx", transaction.id);
+                record.addProperty("owner", OWNER);
+                record.addProperty("storage", storageKey);
+                append(record, false);
+            }
+            truncateIfSettled();
+        });
+    }
+
+    private List<PendingTransaction> readRecoverable(String storageKey) {
+        Map<String, Boolean> alive = new HashMap<>();
+        return readPending().stream()
+                .filter(transaction -> !transaction.applied.contains(storageKey) && transaction.changes.has(storageKey))
+                .filter(transaction -> !alive.computeIfAbsent(transaction.owner, this::isAlive))
+                .toList();
+    }
+
+    // Обрезается, только когда незавершённых транзакций нет ни у кого: BEGIN пишется под той же блокировкой
+    private void truncateIfSettled() {
+        if (!readPending().isEmpty()) {
+            return;
+        }
+        try {
+            new FileOutputStream(file, false).close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to truncate commit journal: " + e.getMessage());
+        }
+    }
+
+    // Межпроцессная блокировка журнала; внутри процесса вызовы уже сериализованы synchronized-методами
+    private void withFileLock(Runnable action) {
+        try {
+            if (lockChannel == null) {
+                lockFile.getAbsoluteFile().getParentFile().mkdirs();
+                lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            FileLock lock = lockChannel.lock();
+            try {
+                action.run();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to lock " + lockFile + ": " + e.getMessage());
+        }
+    }
+
+    /*
+    * Блокировка файла владельца берётся при первой транзакции и держится до конца процесса (ОС снимает её и при падении).
+    * Заодно удаляются файлы владельцев, которые уже не живы.
+    * */
+    private void holdOwnerLock() {
+        if (ownerChannel != null) {
+            return;
+        }
+        File ownerFile = ownerFile(OWNER);
+        try {
+            ownerFile.getAbsoluteFile().getParentFile().mkdirs();
+            FileChannel channel = FileChannel.open(ownerFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.tryLock() == null) {
+                channel.close();
+                throw new IOException("owner file is locked by another process");
+            }
+            ownerChannel = channel;
+            ownerFile.deleteOnExit();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to lock " + ownerFile + ": " + e.getMessage());
+        }
+        withFileLock(this::deleteDeadOwnerFiles);
+    }
+
+    private void deleteDeadOwnerFiles() {
+        String prefix = file.getName().replace(".journal", ".");
+        File[] ownerFiles = file.getAbsoluteFile().getParentFile().listFiles(
+                (dir, name) -> name.startsWith(prefix) && name.endsWith(".owner"));
+        if (ownerFiles == null) {
+            return;
+        }
+        Set<String> pendingOwners = new HashSet<>();
+        readPending().forEach(transaction -> pendingOwners.add(transaction.owner));
+        for (File ownerFile : ownerFiles) {
+            String owner = ownerFile.getName().substring(prefix.length(), ownerFile.getName().length() - ".owner".length());
+            // Файл нужен, пока у владельца есть незавершённые транзакции: без него он считался бы мёртвым
+            if (!owner.equals(OWNER) && !pendingOwners.contains(owner) && !isAlive(owner) && !ownerFile.delete()) {
+                System.err.println("Failed to delete " + ownerFile);
+            }
+        }
+    }
+
+    // Свой процесс жив всегда; чужой - если держит блокировку на своём файле. Записи без владельца - до этой схемы
+    private boolean isAlive(String owner) {
+        if (owner == null) {
+            return false;
+        }
+        if (owner.equals(OWNER)) {
+            return true;
+        }
+        File ownerFile = ownerFile(owner);
+        if (!ownerFile.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(ownerFile.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            // Проверить не удалось - считаем живым: упавшая транзакция доиграется позже, а живую доигрывать нельзя
+            return true;
+        }
+    }
+
+    private File ownerFile(String owner) {
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName().replace(".journal", "." + owner + ".owner"));
+    }
+
+    private List<PendingTransaction> readPending() {
+        Map<String, PendingTransaction> transactions = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return List.of();
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonObject record;
+                try {
+                    record = JsonParser.parseString(line).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    // BEGIN не дописан до конца - транзакция не начиналась
+                    continue;
+                }
+                String txId = record.get("tx").getAsString();
+                switch (record.get("type").getAsString()) {
+                    case "BEGIN" -> transactions.put(txId, new PendingTransaction(txId,
+                            record.has("owner") ? record.get("owner").getAsString() : null,
+                            record.getAsJsonObject("storages")));
+                    case "APPLIED" -> {
+                        PendingTransaction transaction = transactions.get(txId);
+                        if (transaction != null) {
+                            transaction.applied.add(record.get("storage").getAsString());
+                        }
+                    }
+                    case "COMMITTED" -> transactions.remove(txId);
+                    default -> { }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read commit journal: " + e.getMessage());
+        }
+        transactions.values().removeIf(transaction -> transaction.applied.containsAll(transaction.changes.keySet()));
+        return new ArrayList<>(transactions.values());
+    }
+
+    private void append(JsonObject record, boolean sync) {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try (FileOutputStream stream = new FileOutputStream(file, true)) {
+            stream.write((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            if (sync) {
+                stream.getFD().sync();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write commit journal: " + e.getMessage());
+        }
+    }
+
+    private static class PendingTransaction {
+        final String id;
+        final String owner; // null в записях, сделанных до пометки владельцем
+        final JsonObject changes;
+        final Set<String> applied = new HashSet<>();
+
+        PendingTransaction(String id, String owner, JsonObject changes) {
+            this.id = id;
+            this.owner = owner;
+            this.changes = changes;
+        }
+    }
+}
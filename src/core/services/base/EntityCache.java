@@ -0,0 +1,59 @@
+package core.services.base;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Ограниченный LRU-кэш сущностей для ленивого режима хранилища.
+ * Считает попадания и промахи getById, сканы статистику не портят (см. peek).
+ * */
+class EntityCache<T> {
+    private final int capacity;
+    private final Map<String, T> entries;
+    private long hits;
+    private long misses;
+
+    EntityCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > EntityCache.this.capacity;
+            }
+        };
+    }
+
+    synchronized T get(String id) {
+        T entity = entries.get(id);
+        if (entity != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entity;
+    }
+
+    synchronized T peek(String id) {
+        return entries.get(id);
+    }
+
+    // Кладём только если запись всё ещё актуальна: иначе параллельный delete оставил бы в кэше удалённую сущность
+    synchronized void putIf(String id, T entity, BooleanSupplier stillValid) {
+        if (stillValid.getAsBoolean()) {
+            entries.put(id, entity);
+        }
+    }
+
+    synchronized void remove(String id) {
+        entries.remove(id);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized JsonStorageService.CacheStats stats() {
+        return new JsonStorageService.CacheStats(hits, misses, entries.size(), capacity);
+    }
+}
@@ -0,0 +1,43 @@
+package core.services.base;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/*
+ * Бэкенд без диска (тесты, замеры): стартует пустым, живёт до конца процесса. Ни папок, ни журналов,
+ * ни CommitJournal - хранилище с этим бэкендом не создаёт ни одного файла.
+ * Хранит сериализованный вид, поэтому сущности проходят через те же адаптеры, что и в файлах.
+ * */
+public class InMemoryStorageBackend<T> implements StorageBackend<T> {
+    private final Gson gson;
+    private final Class<T> type;
+    private final Map<String, JsonElement> rows = new ConcurrentHashMap<>();
+
+    public InMemoryStorageBackend(Gson gson, Class<T> type) {
+        this.gson = gson;
+        this.type = type;
+    }
+
+    @Override
+    public void load(BiConsumer<String, T> sink) {
+        rows.forEach((id, tree) -> sink.accept(id, gson.fromJson(tree, type)));
+    }
+
+    @Override
+    public synchronized long write(Map<String, JsonElement> puts, Collection<String> deletes) {
+        puts.forEach((id, tree) -> rows.put(id, tree.deepCopy()));
+        deletes.forEach(rows::remove);
+        return 0;
+    }
+
+    // Восстанавливать после падения нечего: всё содержимое пропадает вместе с процессом
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+}
@@ -0,0 +1,106 @@
+package core.services.base;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/*
+ * Встроенная файловая SQL-база через обычный JDBC (H2, SQLite, Derby). Драйвер в поставку не входит:
+ * его jar кладётся в lib/ и добавляется в classpath, см. StorageBackends.
+ * Одна таблица на хранилище: id + JSON сущности в том же виде, что и в файлах.
+ * Пачка пишется одной транзакцией: upsert сделан как DELETE + INSERT, чтобы не зависеть от диалекта.
+ * */
+public class JdbcStorageBackend<T> implements StorageBackend<T> {
+    private final Gson gson;
+    private final Class<T> type;
+    private final String table;
+    private final Connection connection;
+
+    public JdbcStorageBackend(Gson gson, Class<T> type, String url, String table) {
+        this.gson = gson;
+        this.type = type;
+        this.table = table.toUpperCase();
+        try {
+            this.connection = DriverManager.getConnection(url);
+            connection.setAutoCommit(false);
+            createTableIfMissing();
+        } catch (SQLException e) {
+            // "No suitable driver": jar драйвера не в classpath
+            throw new RuntimeException("Failed to open " + url + ": " + e.getMessage()
+                    + " (is the JDBC driver jar in lib/ and on the classpath?)");
+        }
+    }
+
+    private void createTableIfMissing() throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
+            if (tables.next()) {
+                return;
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + table + " (id VARCHAR(64) PRIMARY KEY, entity CLOB NOT NULL)");
+        }
+        connection.commit();
+    }
+
+    @Override
+    public synchronized void load(BiConsumer<String, T> sink) {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT id, entity FROM " + table)) {
+            while (rows.next()) {
+                sink.accept(rows.getString(1), gson.fromJson(rows.getString(2), type));
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read " + table + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized long write(Map<String, JsonElement> puts, Collection<String> deletes) {
+        long bytes = 0;
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + table + " WHERE id = ?");
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table + " (id, entity) VALUES (?, ?)")) {
+            for (String id : puts.keySet()) {
+                delete.setString(1, id);
+                delete.addBatch();
+            }
+            for (String id : deletes) {
+                delete.setString(1, id);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+            for (Map.Entry<String, JsonElement> put : puts.entrySet()) {
+                String json = gson.toJson(put.getValue());
+                insert.setString(1, put.getKey());
+                insert.setString(2, json);
+                insert.addBatch();
+                bytes += json.getBytes(StandardCharsets.UTF_8).length;
+            }
+            insert.executeBatch();
+            connection.commit();
+            return bytes;
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw new RuntimeException("Failed to write " + table + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close " + table + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,634 @@
+package core.services.base;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/*
+ * Бэкенд по умолчанию: файлы в папке хранилища с опциями из StorageOptions - снапшот (шарды, JSON или бинарный),
+ * журнал, межпроцессная блокировка <type>s.lock и слежение за изменениями от других экземпляров приложения.
+ * В отличие от памяти и SQL, держит ссылку на своё хранилище: отложенный разбор и ленивый режим кладут в него
+ * срезы и offsets вместо сущностей, а чужие изменения из общей папки применяются прямо в его память.
+ * */
+final class JsonFileStorageBackend<T> implements StorageBackend<T> {
+    private final JsonStorageService<T> storage;
+    private final StorageOptions options;
+    private final String dataFolder;
+    private final String baseName;
+    private final StorageJournal journal; // null, если журнал выключен
+    private final Set<Integer> dirtyShards = ConcurrentHashMap.newKeySet(); // Шарды, которые расходятся с файлами
+    private final Map<String, FileStamp> knownStamps = new ConcurrentHashMap<>(); // Снапшоты в том виде, в каком мы их прочитали или записали
+    private long journalOffset; // До какого байта журнал уже применён; под storage.fileLock
+    private FileChannel lockChannel; // Открывается при первой записи; под storage.fileLock
+    private int processLockDepth; // под storage.fileLock
+
+    private record FileStamp(long modified, long length) {
+        static FileStamp of(File file) {
+            return new FileStamp(file.lastModified(), file.length());
+        }
+    }
+
+    JsonFileStorageBackend(JsonStorageService<T> storage, String baseName) {
+        this.storage = storage;
+        this.options = storage.options;
+        this.dataFolder = storage.dataFolder;
+        this.baseName = baseName;
+        this.journal = options.isJournaled() ? new StorageJournal(getJournalPath()) : null;
+    }
+
+    private String getFilePath() {
+        return dataFolder + File.separator + baseName + options.getFormat().getExtension();
+    }
+
+    // При одном шарде это обычный <type>s.json (.bin), иначе <type>s.<номер>.json
+    private String getShardPath(int shard) {
+        if (options.getShardCount() == 1) {
+            return getFilePath();
+        }
+        return dataFolder + File.separator + baseName + "." + shard + options.getFormat().getExtension();
+    }
+
+    private int shardOf(String id) {
+        return Math.floorMod(id.hashCode(), options.getShardCount());
+    }
+
+    private String getJournalPath() {
+        return dataFolder + File.separator + baseName + ".log";
+    }
+
+    private String getLockPath() {
+        return dataFolder + File.separator + baseName + ".lock";
+    }
+
+    // Всё содержимое папки целиком в памяти, без отложенного разбора и offsets (например, для конвертеров)
+    @Override
+    public void load(BiConsumer<String, T> sink) {
+        Map<String, T> loaded = new LinkedHashMap<>();
+        listSnapshotFiles().forEach(file -> storage.snapshotIO.read(file, loaded::put));
+        new StorageJournal(getJournalPath()).replay(record -> {
+            T entity = storage.parseEntity(record);
+            if (entity == null) {
+                loaded.remove(record.get("id").getAsString());
+            } else {
+                loaded.put(record.get("id").getAsString(), entity);
+            }
+        });
+        loaded.forEach(sink);
+    }
+
+    @Override
+    public long write(Map<String, JsonElement> puts, Collection<String> deletes) {
+        List<JsonObject> records = new ArrayList<>();
+        puts.forEach((id, tree) -> records.add(StorageJournal.putRecord(id, tree)));
+        deletes.forEach(id -> records.add(StorageJournal.deleteRecord(id)));
+        Appended appended;
+        synchronized (storage.fileLock) {
+            appended = append(records);
+        }
+        if (!appended.rejected().isEmpty()) {
+            throw new StaleEntityException(storage.typeParameterClass.getSimpleName(), appended.rejected());
+        }
+        return appended.bytes();
+    }
+
+    // Снапшот ставится в хранилище целиком (с отложенными срезами и offsets), sink не нужен
+    @Override
+    public Opened open(BiConsumer<String, T> sink) {
+        new File(dataFolder).mkdirs();
+        LoadedSnapshot snapshot = readSnapshot();
+        installSnapshot(snapshot);
+        if (!snapshot.staleFiles.isEmpty()) {
+            migrateLayout(snapshot.staleFiles);
+        }
+        long bytesRead = snapshot.bytes;
+        int journalRecords = 0;
+        if (journal != null) {
+            bytesRead += journal.length();
+            journalOffset = journal.length();
+            // PUT и DELETE идемпотентны, поэтому повторный replay безопасен
+            journalRecords = journal.replay(record -> applyRecord(record, storage.parseEntity(record)));
+        }
+        if (options.isWatched()) {
+            StorageWatcher.shared().register(this, new File(dataFolder).toPath());
+        }
+        return new Opened(journalRecords, bytesRead, !snapshot.staleFiles.isEmpty());
+    }
+
+    // Снапшот, прочитанный без блокировок хранилища; в память его ставит installSnapshot()
+    private final class LoadedSnapshot {
+        private Map<String, T> entities = new ConcurrentHashMap<>();
+        private final Map<String, SnapshotIO.RawRecord> unparsed = new ConcurrentHashMap<>();
+        private final Map<String, SnapshotIO.RecordRef> offsets = new ConcurrentHashMap<>();
+        private final Map<String, FileStamp> stamps = new HashMap<>();
+        private final List<File> staleFiles = new ArrayList<>(); // Файлы другой раскладки, их надо переложить
+        private long bytes;
+
+        // Файлы снапшота те же, что были прочитаны: никто не сделал checkpoint, пока мы читали
+        boolean isCurrent() {
+            List<File> files = listSnapshotFiles();
+            return files.size() == stamps.size()
+                    && files.stream().allMatch(file -> FileStamp.of(file).equals(stamps.get(file.getName())));
+        }
+    }
+
+    /*
+    * Читаются все файлы снапшота в папке (шарды читаются параллельно). Файлы другой раскладки (старый <type>s.json,
+    * шарды при другом N или другой формат) попадают в staleFiles: после installSnapshot() их перекладывает migrateLayout().
+    * */
+    private LoadedSnapshot readSnapshot() {
+        LoadedSnapshot snapshot = new LoadedSnapshot();
+        Set<File> currentFiles = new HashSet<>();
+        for (int shard = 0; shard < options.getShardCount(); shard++) {
+            currentFiles.add(new File(getShardPath(shard)));
+        }
+        List<File> snapshotFiles = listSnapshotFiles();
+        snapshotFiles.forEach(file -> snapshot.stamps.put(file.getName(), FileStamp.of(file)));
+        snapshot.bytes = snapshotFiles.stream().mapToLong(File::length).sum();
+        SnapshotIO<T> snapshotIO = storage.snapshotIO;
+        if (storage.isLazy()) {
+            snapshotFiles.parallelStream().forEach(file -> snapshotIO.index(file, snapshot.offsets::put));
+        } else if (options.isDeferParsing()) {
+            snapshotFiles.parallelStream().forEach(file -> snapshotIO.readRaw(file, snapshot.unparsed::put));
+        } else {
+            Map<String, T> loadedData = new ConcurrentHashMap<>(estimateEntityCount(snapshot.bytes, options.getFormat()));
+            snapshotFiles.parallelStream().forEach(file -> snapshotIO.read(file, loadedData::put));
+            snapshot.entities = loadedData;
+        }
+        snapshotFiles.stream()
+                .filter(file -> !currentFiles.contains(file))
+                .forEach(snapshot.staleFiles::add);
+        return snapshot;
+    }
+
+    // Подменяет содержимое хранилища прочитанным снапшотом. При перечитывании вызывать под fileLock и indexLock
+    private void installSnapshot(LoadedSnapshot snapshot) {
+        storage.installSnapshot(snapshot.entities, snapshot.unparsed, snapshot.offsets);
+        dirtyShards.clear();
+        knownStamps.clear();
+        knownStamps.putAll(snapshot.stamps);
+    }
+
+    private Pattern snapshotNamePattern() {
+        return Pattern.compile(Pattern.quote(baseName) + "(\\.\\d+)?\\.(json|bin)");
+    }
+
+    private List<File> listSnapshotFiles() {
+        Pattern snapshotName = snapshotNamePattern();
+        File[] files = new File(dataFolder).listFiles(
+                (dir, name) -> snapshotName.matcher(name).matches());
+        return files == null ? List.of() : Arrays.asList(files);
+    }
+
+    private void migrateLayout(List<File> staleFiles) {
+        // Срезы ссылаются на старые файлы, которые сейчас будут удалены
+        storage.materializeAll();
+        for (int shard = 0; shard < options.getShardCount(); shard++) {
+            dirtyShards.add(shard);
+        }
+        storage.bytesWritten.addAndGet(saveData());
+        for (File staleFile : staleFiles) {
+            if (!staleFile.delete()) {
+                System.err.println("Failed to delete migrated snapshot " + staleFile);
+            }
+            knownStamps.remove(staleFile.getName());
+        }
+    }
+
+    // Сущность в JSON с отступами - несколько сотен байт, в бинарном виде - меньше сотни; лишняя ёмкость дешевле рехеша
+    private static int estimateEntityCount(long fileBytes, SnapshotFormat format) {
+        long bytesPerEntity = format == SnapshotFormat.BINARY ? 64 : 200;
+        return (int) Math.min(Integer.MAX_VALUE / 2, fileBytes / bytesPerEntity + 16);
+    }
+
+    private void applyRecord(JsonObject record, T entity) {
+        dirtyShards.add(shardOf(record.get("id").getAsString()));
+        storage.applyRecord(record, entity);
+    }
+
+    // Переписываются только грязные шарды. Возвращает записанные байты
+    private long saveData() {
+        return withProcessLock(() -> {
+            long bytes = 0;
+            for (Integer shard : new ArrayList<>(dirtyShards)) {
+                // Снимаем отметку до записи: изменение во время записи снова пометит шард
+                dirtyShards.remove(shard);
+                try {
+                    bytes += writeShard(shard);
+                } catch (RuntimeException e) {
+                    dirtyShards.add(shard);
+                    throw e;
+                }
+            }
+            return bytes;
+        });
+    }
+
+    private long writeShard(int shard) {
+        boolean sharded = options.getShardCount() > 1;
+        if (storage.isLazy()) {
+            return writeLazyShard(shard, sharded);
+        }
+        // Снапшот перезаписывает файл, на который ссылаются срезы, поэтому записи шарда разбираются заранее
+        storage.unparsed.keySet().stream()
+                .filter(id -> !sharded || shardOf(id) == shard)
+                .forEach(storage::getById);
+        Iterator<Map.Entry<String, T>> shardEntries = storage.entities.entrySet().stream()
+                .filter(entry -> !sharded || shardOf(entry.getKey()) == shard)
+                .iterator();
+        File file = new File(getShardPath(shard));
+        long bytes = storage.snapshotIO.write(file, shardEntries);
+        knownStamps.put(file.getName(), FileStamp.of(file));
+        return bytes;
+    }
+
+    /*
+    * Неразобранные записи шарда копируются из старого файла байтами, после записи их offsets
+    * пересчитываются по новому файлу. Всё под write-lock, чтобы getById не прочитал старый offset из нового файла.
+    * */
+    private long writeLazyShard(int shard, boolean sharded) {
+        File file = new File(getShardPath(shard));
+        Map<String, T> entities = storage.entities;
+        Map<String, SnapshotIO.RecordRef> offsets = storage.offsets;
+        storage.snapshotLock.writeLock().lock();
+        try {
+            Iterator<Map.Entry<String, T>> pinned = entities.entrySet().stream()
+                    .filter(entry -> !sharded || shardOf(entry.getKey()) == shard)
+                    .iterator();
+            Iterator<Map.Entry<String, SnapshotIO.RecordRef>> untouched = offsets.entrySet().stream()
+                    .filter(entry -> !sharded || shardOf(entry.getKey()) == shard)
+                    .filter(entry -> !entities.containsKey(entry.getKey()))
+                    .iterator();
+            long bytes = storage.snapshotIO.write(file, pinned, untouched);
+            knownStamps.put(file.getName(), FileStamp.of(file));
+            storage.snapshotIO.index(file, offsets::replace);
+            return bytes;
+        } finally {
+            storage.snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    * С журналом записи дописываются в него под межпроцессной блокировкой: сначала дочитываем чужие изменения,
+    * потом дописываем свои. Свои PUT, которые другой экземпляр успел перебить той же или более новой версией,
+    * не пишутся - их id возвращаются. Без журнала переписываются шарды, которых коснулись записи.
+    * Вызывать под storage.fileLock.
+    * */
+    @Override
+    public Appended append(List<JsonObject> records) {
+        if (journal == null) {
+            records.forEach(record -> dirtyShards.add(shardOf(record.get("id").getAsString())));
+            return new Appended(saveData(), Set.of());
+        }
+        return withProcessLock(() -> {
+            Set<String> conflicts = refreshFromDisk(records);
+            List<JsonObject> accepted = conflicts.isEmpty() ? records : records.stream()
+                    .filter(record -> !conflicts.contains(record.get("id").getAsString()))
+                    .toList();
+            accepted.forEach(record -> dirtyShards.add(shardOf(record.get("id").getAsString())));
+            long bytes = journal.append(accepted);
+            // Свои записи дочитывать не нужно: под межпроцессной блокировкой после нас никто не дописал
+            journalOffset = journal.length();
+            if (journal.size() >= options.getCheckpointThreshold()) {
+                bytes += checkpoint();
+            }
+            return new Appended(bytes, conflicts);
+        });
+    }
+
+    // Под межпроцессной блокировкой память сверяется с диском, поэтому проверки версий в action окончательны
+    @Override
+    public <R> R exclusive(Supplier<R> action) {
+        return withProcessLock(() -> {
+            refreshFromDisk(List.of());
+            return action.get();
+        });
+    }
+
+    /*
+    * FileChannel.lock на <type>s.lock сериализует запись между процессами, storage.fileLock - между потоками.
+    * Вложенные вызовы (checkpoint из append) повторно файл не блокируют.
+    * */
+    private <R> R withProcessLock(Supplier<R> action) {
+        synchronized (storage.fileLock) {
+            if (processLockDepth > 0) {
+                processLockDepth++;
+                try {
+                    return action.get();
+                } finally {
+                    processLockDepth--;
+                }
+            }
+            FileLock lock;
+            try {
+                lock = lockChannel().lock();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to lock " + getLockPath() + ": " + e.getMessage());
+            }
+            processLockDepth = 1;
+            try {
+                return action.get();
+            } finally {
+                processLockDepth = 0;
+                try {
+                    lock.release();
+                } catch (IOException e) {
+                    System.err.println("Failed to release " + getLockPath() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private FileChannel lockChannel() throws IOException {
+        if (lockChannel == null) {
+            lockChannel = FileChannel.open(Path.of(getLockPath()), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return lockChannel;
+    }
+
+    // Переписывает шарды, изменённые с прошлого checkpoint-а, и очищает журнал
+    @Override
+    public long checkpoint() {
+        return withProcessLock(() -> {
+            // Изменения другого экземпляра, которые мы ещё не видели, должны попасть в снапшот до обрезки журнала
+            refreshFromDisk(List.of());
+            long bytes = saveData();
+            if (journal != null) {
+                journal.truncate();
+                journalOffset = 0;
+            }
+            return bytes;
+        });
+    }
+
+    /*
+    * Перед проверкой версий подтягиваем то, что другие экземпляры уже дописали в журнал: тогда устаревшая копия
+    * отвергается сразу в save()/update() исключением у вызывающего, а не при фоновой записи.
+    * Пока журнал не менялся, это одно сравнение длины файла.
+    * */
+    @Override
+    public void refresh() {
+        if (journal != null && journal.length() != currentJournalOffset()) {
+            catchUpExternal();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (options.isWatched()) {
+            StorageWatcher.shared().unregister(this);
+        }
+        synchronized (storage.fileLock) {
+            if (lockChannel != null) {
+                try {
+                    lockChannel.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close " + getLockPath() + ": " + e.getMessage());
+                }
+                lockChannel = null;
+            }
+        }
+    }
+
+    /*
+    * Вызывается из storage-watcher. Свои записи отсеиваются по отметкам файлов (снапшоты) и по origin (журнал).
+    * Изменённый чужой снапшот означает checkpoint другого экземпляра - тогда хранилище перечитывается целиком,
+    * иначе из журнала дочитываются только новые записи. Файлы читаются и разбираются без fileLock и indexLock,
+    * поэтому save() из EDT в это время не ждёт.
+    * */
+    void onFilesChanged(Set<String> fileNames) {
+        try {
+            Pattern snapshotName = snapshotNamePattern();
+            boolean snapshotChanged = fileNames.stream()
+                    .filter(name -> snapshotName.matcher(name).matches())
+                    .anyMatch(this::isExternalChange);
+            if (snapshotChanged) {
+                reloadAll();
+            } else if (journal != null && fileNames.contains(new File(getJournalPath()).getName())) {
+                catchUpExternal();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to reload " + getFilePath() + ": " + e.getMessage());
+        }
+    }
+
+    // Сверка без событий WatchService (сетевые тома)
+    void pollForChanges() {
+        Set<String> changed = new HashSet<>();
+        for (File file : listSnapshotFiles()) {
+            if (isExternalChange(file.getName())) {
+                changed.add(file.getName());
+            }
+        }
+        if (journal != null && journal.length() != currentJournalOffset()) {
+            changed.add(new File(getJournalPath()).getName());
+        }
+        if (!changed.isEmpty()) {
+            onFilesChanged(changed);
+        }
+    }
+
+    private long currentJournalOffset() {
+        synchronized (storage.fileLock) {
+            return journalOffset;
+        }
+    }
+
+    private boolean isExternalChange(String fileName) {
+        File file = new File(dataFolder, fileName);
+        return file.exists() && !FileStamp.of(file).equals(knownStamps.get(fileName));
+    }
+
+    /*
+    * Хвост журнала читается и разбирается без блокировок. Если за это время offset сдвинул кто-то другой
+    * (своя запись дочитала журнал или хранилище перечитано), эти записи уже применены и прочитанное выбрасывается.
+    * */
+    private void catchUpExternal() {
+        long from = currentJournalOffset();
+        long start = journal.length() < from ? 0 : from; // Журнал обрезан чужим checkpoint-ом
+        List<JournalEntry<T>> entries = new ArrayList<>();
+        long end = journal.readFrom(start, record -> {
+            if (!StorageJournal.isOwn(record)) {
+                entries.add(new JournalEntry<>(record, storage.parseEntity(record)));
+            }
+        });
+        List<StorageEvent<T>> events = new ArrayList<>();
+        synchronized (storage.fileLock) {
+            if (journalOffset != from) {
+                return;
+            }
+            journalOffset = end;
+            for (JournalEntry<T> entry : entries) {
+                StorageEvent<T> event = applyExternal(entry.record(), entry.entity());
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+        }
+        events.forEach(storage::fireOutsideFileLock);
+    }
+
+    // Запись журнала вместе с уже разобранной сущностью (null для DELETE)
+    private record JournalEntry<T>(JsonObject record, T entity) {
+    }
+
+    /*
+    * Подтягивает в память то, что другие процессы записали после нас. ownRecords - наши записи,
+    * которые сейчас будут дописаны; возвращаются id тех из них, что проиграли конфликт версий.
+    * Без журнала ничего не делает: перечитывание потеряло бы ещё не записанные изменения. Вызывать под fileLock.
+    * */
+    private Set<String> refreshFromDisk(List<JsonObject> ownRecords) {
+        Set<String> conflicts = new HashSet<>();
+        if (journal == null) {
+            return conflicts;
+        }
+        Map<String, Long> ownVersions = new HashMap<>();
+        for (JsonObject record : ownRecords) {
+            if (StorageJournal.OP_PUT.equals(record.get("op").getAsString())) {
+                long version = JsonStorageService.versionOf(record.get("entity"));
+                if (version > 0) {
+                    ownVersions.put(record.get("id").getAsString(), version);
+                }
+            }
+        }
+        boolean snapshotChanged = listSnapshotFiles().stream().anyMatch(file -> isExternalChange(file.getName()));
+        if (!snapshotChanged) {
+            catchUpJournal(ownVersions, conflicts);
+            return conflicts;
+        }
+        // Другой экземпляр сделал checkpoint: память перечитывается, свои записи накладываются поверх заново
+        reloadFromDisk();
+        for (JsonObject record : ownRecords) {
+            String id = record.get("id").getAsString();
+            Long ownVersion = ownVersions.get(id);
+            T onDisk = storage.getById(id);
+            boolean lost = ownVersion != null
+                    && (onDisk != null ? JsonStorageService.entityVersion(onDisk) >= ownVersion : ownVersion > 1);
+            if (lost) {
+                conflicts.add(id);
+            } else {
+                storage.applyOwn(record);
+            }
+        }
+        return conflicts;
+    }
+
+    // Вызывать под fileLock
+    private void catchUpJournal(Map<String, Long> ownVersions, Set<String> conflicts) {
+        if (journal.length() < journalOffset) {
+            // Журнал обрезан чужим checkpoint-ом; его снапшот придёт отдельным событием
+            journalOffset = 0;
+        }
+        journalOffset = journal.readFrom(journalOffset, record -> {
+            if (StorageJournal.isOwn(record)) {
+                return;
+            }
+            String id = record.get("id").getAsString();
+            Long ownVersion = ownVersions.get(id);
+            if (ownVersion != null && (StorageJournal.OP_DELETE.equals(record.get("op").getAsString())
+                    || JsonStorageService.versionOf(record.get("entity")) >= ownVersion)) {
+                conflicts.add(id);
+            }
+            StorageEvent<T> event = applyExternal(record, storage.parseEntity(record));
+            if (event != null) {
+                storage.fireOutsideFileLock(event);
+            }
+        });
+    }
+
+    // Чужая запись из журнала попадёт в наш следующий снапшот, поэтому её шард помечается грязным
+    private StorageEvent<T> applyExternal(JsonObject record, T entity) {
+        dirtyShards.add(shardOf(record.get("id").getAsString()));
+        return storage.applyExternal(record, entity);
+    }
+
+    /*
+    * Перечитывает снапшот и журнал целиком после чужого checkpoint-а. Свои ещё не записанные изменения сначала
+    * уходят в журнал. Файлы читаются без блокировок; save(), сделанные за это время, хранилище запоминает
+    * и накладывает поверх прочитанного. Если снапшот за время чтения сменился ещё раз
+    * или хранилище уже перечитали, используется перечитывание под блокировками.
+    * */
+    private void reloadAll() {
+        if (journal != null) {
+            storage.flush();
+        }
+        if (listSnapshotFiles().stream().noneMatch(file -> isExternalChange(file.getName()))) {
+            return;
+        }
+        long started = System.nanoTime();
+        long generation = storage.beginReloadTracking();
+        try {
+            LoadedSnapshot snapshot = readSnapshot();
+            List<JournalEntry<T>> entries = new ArrayList<>();
+            long journalEnd = journal == null ? 0
+                    : journal.readAll(record -> entries.add(new JournalEntry<>(record, storage.parseEntity(record))));
+            if (storage.hasIndexes()) {
+                // Индексы строятся под блокировкой, поэтому всё, что можно, разбирается заранее
+                snapshot.unparsed.forEach((id, raw) -> snapshot.entities.put(id, storage.snapshotIO.parse(raw)));
+                snapshot.unparsed.clear();
+            }
+            synchronized (storage.fileLock) {
+                if (!storage.isReloadGeneration(generation)) {
+                    return; // Пока читали, хранилище уже перечитали
+                }
+                if (!snapshot.isCurrent()) {
+                    reloadFromDisk();
+                    return;
+                }
+                installReloaded(snapshot, entries, journalEnd, started);
+            }
+        } finally {
+            storage.endReloadTracking();
+            // Перечитывание под блокировкой (reloadFromDisk) только копит события
+            storage.fireDeferred();
+        }
+        storage.fireOutsideFileLock(new StorageEvent<>(StorageEvent.Type.RELOADED, null, null, true));
+    }
+
+    // Перечитывание целиком; вызывать под fileLock, поэтому файлы за время чтения не меняются
+    private void reloadFromDisk() {
+        long started = System.nanoTime();
+        storage.beginReloadTracking();
+        try {
+            LoadedSnapshot snapshot = readSnapshot();
+            List<JournalEntry<T>> entries = new ArrayList<>();
+            long journalEnd = journal == null ? 0
+                    : journal.readAll(record -> entries.add(new JournalEntry<>(record, storage.parseEntity(record))));
+            installReloaded(snapshot, entries, journalEnd, started);
+        } finally {
+            storage.endReloadTracking();
+        }
+        storage.fireOutsideFileLock(new StorageEvent<>(StorageEvent.Type.RELOADED, null, null, true));
+    }
+
+    /*
+    * Ставит прочитанный снапшот и журнал и дочитывает хвост журнала, дописанный за время чтения; свои изменения
+    * за это время хранилище накладывает в finishReload(). Вызывать под fileLock между begin/endReloadTracking().
+    * */
+    private void installReloaded(LoadedSnapshot snapshot, List<JournalEntry<T>> entries, long journalEnd, long started) {
+        synchronized (storage.indexLock) {
+            installSnapshot(snapshot);
+            int journalRecords = entries.size();
+            if (journal != null) {
+                entries.forEach(entry -> applyRecord(entry.record(), entry.entity()));
+                journalOffset = journal.readFrom(journalEnd, record -> applyRecord(record, storage.parseEntity(record)));
+                journalRecords = journal.size();
+            }
+            storage.finishReload(journalRecords, snapshot.bytes + (journal == null ? 0 : journalEnd), started,
+                    !snapshot.staleFiles.isEmpty());
+        }
+        if (!snapshot.staleFiles.isEmpty()) {
+            migrateLayout(snapshot.staleFiles);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package core.services.base;
+
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Находит в JSON снапшоте { "id": {...}, ... } границы значений, не разбирая сами сущности.
+ * Работает по байтам: все структурные символы JSON однобайтовые, поэтому UTF-8 декодировать не нужно.
+ * */
+final class JsonRecordScanner {
+    private JsonRecordScanner() {
+    }
+
+    // Границы значения в байтах от начала буфера
+    interface ValueSink {
+        void accept(String id, int offset, int length) throws IOException;
+    }
+
+    static void scan(ByteBuffer buffer, ValueSink sink) throws IOException {
+        int pos = skipWhitespace(buffer, buffer.position());
+        if (pos == buffer.limit() || startsWith(buffer, pos, "null")) {
+            return;
+        }
+        pos = expect(buffer, pos, '{');
+        pos = skipWhitespace(buffer, pos);
+        if (pos < buffer.limit() && buffer.get(pos) == '}') {
+            return;
+        }
+        while (true) {
+            if (pos >= buffer.limit() || buffer.get(pos) != '"') {
+                throw new IOException("Expected id at byte " + pos);
+            }
+            int keyEnd = endOfString(buffer, pos);
+            String id = decodeKey(buffer, pos, keyEnd);
+            pos = skipWhitespace(buffer, keyEnd);
+            pos = expect(buffer, pos, ':');
+            int valueStart = skipWhitespace(buffer, pos);
+            int valueEnd = endOfValue(buffer, valueStart);
+            if (!startsWith(buffer, valueStart, "null")) {
+                sink.accept(id, valueStart, valueEnd - valueStart);
+            }
+            pos = skipWhitespace(buffer, valueEnd);
+            if (pos < buffer.limit() && buffer.get(pos) == ',') {
+                pos = skipWhitespace(buffer, pos + 1);
+                continue;
+            }
+            expect(buffer, pos, '}');
+            return;
+        }
+    }
+
+    // Позиция сразу после закрывающей кавычки строки, начинающейся в start
+    private static int endOfString(ByteBuffer buffer, int start) throws IOException {
+        for (int i = start + 1; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i + 1;
+            }
+        }
+        throw new IOException("Unterminated string at byte " + start);
+    }
+
+    private static int endOfValue(ByteBuffer buffer, int start) throws IOException {
+        if (start >= buffer.limit()) {
+            throw new IOException("Unexpected end of snapshot");
+        }
+        byte first = buffer.get(start);
+        if (first == '"') {
+            return endOfString(buffer, start);
+        }
+        if (first != '{' && first != '[') {
+            int i = start;
+            while (i < buffer.limit() && ",}] \t\r\n".indexOf(buffer.get(i)) < 0) {
+                i++;
+            }
+            return i;
+        }
+        int depth = 0;
+        for (int i = start; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                i = endOfString(buffer, i) - 1;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        throw new IOException("Unterminated value at byte " + start);
+    }
+
+    private static String decodeKey(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        String quoted = new String(bytes, StandardCharsets.UTF_8);
+        // id почти всегда UUID без экранирования, JsonParser нужен только для редких escape-последовательностей
+        return quoted.indexOf('\\') < 0 ? quoted.substring(1, quoted.length() - 1) : JsonParser.parseString(quoted).getAsString();
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int pos) {
+        while (pos < buffer.limit()) {
+            byte b = buffer.get(pos);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int expect(ByteBuffer buffer, int pos, char c) throws IOException {
+        if (pos >= buffer.limit() || buffer.get(pos) != c) {
+            throw new IOException("Expected '" + c + "' at byte " + pos);
+        }
+        return pos + 1;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int pos, String literal) {
+        if (pos + literal.length() > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (buffer.get(pos + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,103 +2,1237 @@ package core.services.base;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.TypeAdapter;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
-
-import java.io.*;
-import java.lang.reflect.Type;
-import java.time.LocalDate;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import core.models.base.Versioned;
+import core.services.base.adapters.ModelAdapters;
+
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class JsonStorageService<T> {
+    private static final int LOCK_STRIPES = 64;
+    // Один поток на все хранилища: в режиме group commit он пишет накопившиеся изменения
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "storage-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Открытые хранилища: при выходе их отложенные записи сбрасываются, а файлы отпускаются; shutdown hook на всех один
+    private static final Set<JsonStorageService<?>> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> OPEN.forEach(JsonStorageService::closeQuietly), "storage-shutdown-flush"));
+    }
+
     protected final Gson gson;
     protected final String dataFolder;
     protected final Class<T> typeParameterClass; // Классы
-    protected Map<String, T> entities; // Словарик сущностей, для того чтобы каждый раз не обращаться к IO-операциям.
-    private final Object fileLock = new Object();
+    protected final StorageOptions options;
+    protected volatile Map<String, T> entities; // Словарик сущностей, для того чтобы каждый раз не обращаться к IO-операциям.
+    final Map<String, SnapshotIO.RawRecord> unparsed = new ConcurrentHashMap<>(); // При deferParsing: ещё не разобранные записи снапшота
+    final Map<String, SnapshotIO.RecordRef> offsets = new ConcurrentHashMap<>(); // Ленивый режим: id -> положение в файле
+    private final EntityCache<T> cache; // null, если ленивый режим выключен
+    final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock(); // Чтение по offsets против перезаписи шарда
+    private final StorageBackend<T> backend; // Файлы, память или SQL - см. StorageBackends
+    final SnapshotIO<T> snapshotIO;
+    final Object fileLock = new Object(); // Запись на диск: flush и всё, что бэкенд делает с файлами
+    final Object indexLock = new Object(); // Чтобы мапа и индексы менялись вместе
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES]; // Read-modify-write одной сущности
+    private final Map<String, SecondaryIndex<T>> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<PendingWrite> pendingWrites = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile LoadStats loadStats;
+    // Отпечаток сериализованного вида сущности на момент последней записи: save() без изменений ничего не пишет
+    private final Map<String, Long> fingerprints = new ConcurrentHashMap<>();
+    private final AtomicLong mutations = new AtomicLong();
+    private final AtomicLong skippedSaves = new AtomicLong();
+    final AtomicLong bytesWritten = new AtomicLong();
+    private final List<StorageListener<T>> listeners = new CopyOnWriteArrayList<>();
+    private final Queue<StorageEvent<T>> deferredEvents = new ConcurrentLinkedQueue<>(); // Собраны бэкендом под fileLock
+    private final AsyncStorage<T> async = new AsyncStorage<>(this);
+    private Map<String, T> changedDuringReload; // Свои изменения, пока снапшот перечитывается без блокировок (null - удаление); под indexLock
+    private int reloadsInProgress; // под indexLock
+    private long reloadGeneration; // Число перечитываний; под indexLock
+
+    // Записи одного save/delete/пачки в очереди group commit и future, который flush завершит после записи
+    private record PendingWrite(List<JsonObject> records, CompletableFuture<Void> written) {
+    }
+
+    // Ленивый режим: как часто getById обходится без чтения с диска
+    public record CacheStats(long hits, long misses, int size, int capacity) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    // Сколько байт (журнал + снапшоты) обходится одна логическая мутация
+    public record WriteStats(long mutations, long skippedSaves, long bytesWritten) {
+        public double bytesPerMutation() {
+            return mutations == 0 ? 0 : (double) bytesWritten / mutations;
+        }
+    }
+
+    /*
+    * Стоимость загрузки хранилища: при старте или при перечитывании после чужого checkpoint-а.
+    * migrated - снапшот переложен в текущую раскладку шардов/формат, recoveredTransactions - доиграно из CommitJournal.
+    * */
+    public record LoadStats(int entities, int journalRecords, long bytesRead, long nanos,
+                            boolean migrated, int recoveredTransactions) {
+        public double entitiesPerSecond() {
+            return nanos == 0 ? 0 : entities * 1_000_000_000.0 / nanos;
+        }
+
+        public double millis() {
+            return nanos / 1_000_000.0;
+        }
+    }
 
     public JsonStorageService(Class<T> typeParameterClass, String dataFolder) {
+        this(typeParameterClass, dataFolder, StorageOptions.defaults());
+    }
+
+    public JsonStorageService(Class<T> typeParameterClass, String dataFolder, StorageOptions options) {
         this.typeParameterClass = typeParameterClass;
         this.dataFolder = dataFolder;
-        this.gson = new GsonBuilder()
-                .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+        this.options = options;
+        this.gson = ModelAdapters.registerAll(new GsonBuilder())
                 .setPrettyPrinting()
                 .create();
         this.entities = new ConcurrentHashMap<>();
+        Arrays.setAll(stripes, i -> new ReentrantLock());
+        this.snapshotIO = new SnapshotIO<>(gson, typeParameterClass, options.isMemoryMapped());
+        StorageBackends.Kind kind = StorageBackends.configured();
+        // Опции файлов (журнал, шарды, ленивое чтение, watcher) действуют только для JSON-файлов
+        this.cache = kind == StorageBackends.Kind.JSON && options.isLazy()
+                ? new EntityCache<>(options.getLazyCacheSize()) : null;
+        this.backend = StorageBackends.create(kind, this, getFileBaseName());
 
-        new File(dataFolder).mkdirs();
         loadData();
+        OPEN.add(this);
     }
 
-    protected String getFilePath() {
-        return dataFolder + File.separator + typeParameterClass.getSimpleName().toLowerCase() + "s.json";
+    private String getFileBaseName() {
+        return typeParameterClass.getSimpleName().toLowerCase() + "s";
     }
 
     private void loadData() {
-        File file = new File(getFilePath());
-        if (!file.exists()) {
-            return;
+        long started = System.nanoTime();
+        StorageBackend.Opened opened = backend.open(entities::put);
+        int recovered = recoverTransactions();
+        rebuildIndexes();
+        loadStats = new LoadStats(entityCount(), opened.journalRecords(), opened.bytesRead(),
+                System.nanoTime() - started, opened.migrated(), recovered);
+    }
+
+    // Вместе с ещё не разобранными записями и сущностями, которые в ленивом режиме лежат только на диске
+    private int entityCount() {
+        return entities.size() + unparsed.size() + offsets.size();
+    }
+
+    public LoadStats getLoadStats() {
+        return loadStats;
+    }
+
+    public WriteStats getWriteStats() {
+        return new WriteStats(mutations.get(), skippedSaves.get(), bytesWritten.get());
+    }
+
+    public CacheStats getCacheStats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0) : cache.stats();
+    }
+
+    // Подменяет содержимое хранилища прочитанным снапшотом. При перечитывании вызывать под fileLock и indexLock
+    void installSnapshot(Map<String, T> loaded, Map<String, SnapshotIO.RawRecord> loadedUnparsed,
+                         Map<String, SnapshotIO.RecordRef> loadedOffsets) {
+        unparsed.clear();
+        unparsed.putAll(loadedUnparsed);
+        offsets.clear();
+        offsets.putAll(loadedOffsets);
+        if (cache != null) {
+            cache.clear();
+        }
+        fingerprints.clear();
+        entities = loaded;
+    }
+
+    // Сущность из PUT-записи журнала, для DELETE - null
+    T parseEntity(JsonObject record) {
+        return StorageJournal.OP_DELETE.equals(record.get("op").getAsString())
+                ? null : gson.fromJson(record.get("entity"), typeParameterClass);
+    }
+
+    // Запись журнала при загрузке и перечитывании, до построения индексов
+    void applyRecord(JsonObject record, T entity) {
+        String id = record.get("id").getAsString();
+        unparsed.remove(id);
+        offsets.remove(id);
+        if (cache != null) {
+            cache.remove(id);
+        }
+        if (StorageJournal.OP_DELETE.equals(record.get("op").getAsString())) {
+            entities.remove(id);
+            fingerprints.remove(id);
+        } else {
+            entities.put(id, entity);
+            fingerprints.put(id, fingerprint(record.get("entity")));
+        }
+    }
+
+    // Доигрываем свою часть транзакций, которые упали между записью в CommitJournal и применением; возвращает их число
+    private int recoverTransactions() {
+        if (!isPersistent()) {
+            return 0;
         }
-        /*
-        * Береться стрим файла, и потом в mapType подбирается тип модели. (Client)
-        * gson.fromJson() -> читает файл и мапит данные в модельку. (подставляет данные из файла в модель)
-        * */
-        try (FileReader reader = new FileReader(file)) {
-            // Create a type that tells Gson exactly what to deserialize into
-            Type mapType = TypeToken.getParameterized(HashMap.class, String.class, typeParameterClass).getType();
-            Map<String, T> loadedData = gson.fromJson(reader, mapType);
-            if (loadedData != null) {
-                entities = new ConcurrentHashMap<>(loadedData);
+        CommitJournal commitJournal = CommitJournal.shared();
+        List<JsonArray> pending = commitJournal.pendingFor(getStorageKey());
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<JsonObject> records = new ArrayList<>();
+        for (JsonArray transactionRecords : pending) {
+            for (JsonElement element : transactionRecords) {
+                JsonObject record = element.getAsJsonObject();
+                if (isSuperseded(record)) {
+                    continue;
+                }
+                applyRecord(record, parseEntity(record));
+                records.add(record);
+            }
+        }
+        if (!records.isEmpty()) {
+            persist(records);
+            flush();
+        }
+        commitJournal.markRecovered(getStorageKey());
+        return pending.size();
+    }
+
+    /*
+    * Запись упавшей транзакции уже применена или перекрыта более поздней записью из снапшота или журнала:
+    * PUT - если загруженная версия не меньше версии записи, DELETE - если сущность с тех пор менялась.
+    * Для сущностей без версии и старых DELETE без версии сравнивать нечего - запись доигрывается.
+    * */
+    private boolean isSuperseded(JsonObject record) {
+        T current = getById(record.get("id").getAsString());
+        if (!(current instanceof Versioned versioned)) {
+            return false;
+        }
+        if (StorageJournal.OP_DELETE.equals(record.get("op").getAsString())) {
+            return record.has("version") && versioned.getVersion() > record.get("version").getAsLong();
+        }
+        return versionOf(record.get("entity")) <= versioned.getVersion();
+    }
+
+    // Ключ хранилища в CommitJournal
+    String getStorageKey() {
+        return dataFolder;
+    }
+
+    // Пишут ли транзакции этого хранилища в CommitJournal (в памяти восстанавливать нечего)
+    boolean isPersistent() {
+        return backend.isPersistent();
+    }
+
+    boolean isLazy() {
+        return cache != null;
+    }
+
+    boolean hasIndexes() {
+        return !indexes.isEmpty();
+    }
+
+    /*
+    * Future завершается, когда записи на диске; в group commit mode это следующий flush, и он завершит future
+    * со StaleEntityException, если другой экземпляр успел перебить одну из сущностей.
+    * */
+    private CompletableFuture<Void> persist(List<JsonObject> records) {
+        if (options.isGroupCommit()) {
+            CompletableFuture<Void> written = new CompletableFuture<>();
+            pendingWrites.add(new PendingWrite(records, written));
+            if (flushScheduled.compareAndSet(false, true)) {
+                FLUSHER.schedule(this::flushQuietly, options.getGroupCommitWindowMillis(), TimeUnit.MILLISECONDS);
+            }
+            return written;
+        }
+        return write(records);
+    }
+
+    /*
+    * Синхронная запись мимо очереди group commit. Очередь сбрасывается раньше, чтобы более ранние save()
+    * тех же сущностей не легли в журнал после этих записей.
+    * */
+    private CompletableFuture<Void> write(List<JsonObject> records) {
+        StorageBackend.Appended appended;
+        synchronized (fileLock) {
+            if (!pendingWrites.isEmpty()) {
+                try {
+                    flush();
+                } catch (StaleEntityException e) {
+                    // Это чужие записи из очереди: их future уже завершены с ошибкой
+                }
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load data: " + e.getMessage());
+            appended = backend.append(records);
+        }
+        fireDeferred();
+        bytesWritten.addAndGet(appended.bytes());
+        if (!appended.rejected().isEmpty()) {
+            throw new StaleEntityException(typeParameterClass.getSimpleName(), appended.rejected());
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Перед проверкой версий: устаревшая копия отвергается сразу в save()/update(), а не при фоновой записи
+    void syncWithDisk() {
+        backend.refresh();
+    }
+
+    /*
+     * Барьер durability: после возврата все изменения, сделанные до вызова, лежат на диске.
+     * В обычном режиме запись и так синхронная, поэтому метод ничего не делает.
+     * Записи, которые другой экземпляр успел перебить более новой версией, не пишутся: их future из очереди
+     * завершаются StaleEntityException, и это же исключение бросается вызывающему.
+     * */
+    public void flush() {
+        try {
+            flushLocked();
+        } finally {
+            fireDeferred();
         }
     }
 
-    private void saveData() {
+    private void flushLocked() {
         synchronized (fileLock) {
-            try (FileWriter writer = new FileWriter(getFilePath())) {
-                gson.toJson(entities, writer);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to save data: " + e.getMessage());
+            // Сбрасываем флаг до чтения очереди: мутация, пришедшая позже, запланирует новый flush
+            flushScheduled.set(false);
+            List<PendingWrite> batch = new ArrayList<>();
+            PendingWrite write;
+            while ((write = pendingWrites.pollFirst()) != null) {
+                batch.add(write);
             }
+            List<JsonObject> records = new ArrayList<>();
+            batch.forEach(pending -> records.addAll(pending.records()));
+            Set<String> conflicts = Set.of();
+            try {
+                if (!records.isEmpty()) {
+                    StorageBackend.Appended appended = backend.append(records);
+                    bytesWritten.addAndGet(appended.bytes());
+                    conflicts = appended.rejected();
+                }
+            } catch (RuntimeException e) {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    pendingWrites.addFirst(batch.get(i));
+                }
+                throw e;
+            }
+            for (PendingWrite pending : batch) {
+                Set<String> lost = new HashSet<>();
+                for (JsonObject record : pending.records()) {
+                    String id = record.get("id").getAsString();
+                    if (conflicts.contains(id)) {
+                        lost.add(id);
+                    }
+                }
+                if (lost.isEmpty()) {
+                    pending.written().complete(null);
+                } else {
+                    pending.written().completeExceptionally(new StaleEntityException(typeParameterClass.getSimpleName(), lost));
+                }
+            }
+            if (!conflicts.isEmpty()) {
+                throw new StaleEntityException(typeParameterClass.getSimpleName(), conflicts);
+            }
+        }
+    }
+
+    /*
+    * Сбрасывает отложенные изменения и отпускает файлы. После close() хранилище больше не используется;
+    * для хранилищ, которые не закрыли явно, это делает общий shutdown hook.
+    * */
+    public void close() {
+        OPEN.remove(this);
+        try {
+            flush();
+        } finally {
+            backend.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to close " + dataFolder + ": " + e.getMessage());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (StaleEntityException e) {
+            // Уже доставлено: future этих записей завершены с ошибкой, слушатели получили SAVED с чужой версией
+        } catch (RuntimeException e) {
+            System.err.println("Background flush of " + dataFolder + " failed: " + e.getMessage());
+        }
+    }
+
+    // Сбрасывает отложенные записи и сжимает накопленное (JSON: переписывает шарды и обрезает журнал)
+    public void checkpoint() {
+        flush();
+        synchronized (fileLock) {
+            bytesWritten.addAndGet(backend.checkpoint());
+        }
+        fireDeferred();
+    }
+
+    // Те же операции через CompletableFuture на потоке storage-io - для вызовов из EDT
+    public AsyncStorage<T> async() {
+        return async;
+    }
+
+    public void addListener(StorageListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StorageListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    private void fire(StorageEvent.Type type, String id, T entity, boolean external) {
+        if (!listeners.isEmpty()) {
+            fire(new StorageEvent<>(type, id, entity, external));
+        }
+    }
+
+    /*
+    * События бэкенда. Под fileLock они только копятся: слушатель может писать в другое хранилище, и его блокировки
+    * брались бы под нашей. Рассылает их тот, кто отпускает fileLock, - fireDeferred().
+    * */
+    void fireOutsideFileLock(StorageEvent<T> event) {
+        deferredEvents.add(event);
+        fireDeferred();
+    }
+
+    void fireDeferred() {
+        if (Thread.holdsLock(fileLock)) {
+            return;
+        }
+        StorageEvent<T> event;
+        while ((event = deferredEvents.poll()) != null) {
+            fire(event);
+        }
+    }
+
+    void fire(StorageEvent<T> event) {
+        for (StorageListener<T> listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                System.err.println("Storage listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Возвращает событие для слушателей или null, если запись ничего не поменяла
+    StorageEvent<T> applyExternal(JsonObject record, T entity) {
+        String id = record.get("id").getAsString();
+        if (entity == null) {
+            synchronized (indexLock) {
+                removeIndexed(id);
+            }
+            return new StorageEvent<>(StorageEvent.Type.DELETED, id, null, true);
+        }
+        synchronized (indexLock) {
+            // Запись старше того, что уже есть в памяти, ничего не меняет
+            T current = getById(id);
+            if (current != null && entityVersion(current) > entityVersion(entity)) {
+                return null;
+            }
+            putIndexed(id, entity);
+            fingerprints.put(id, fingerprint(record.get("entity")));
+        }
+        return new StorageEvent<>(StorageEvent.Type.SAVED, id, entity, true);
+    }
+
+    // Своя запись поверх перечитанного с диска
+    void applyOwn(JsonObject record) {
+        String id = record.get("id").getAsString();
+        synchronized (indexLock) {
+            if (StorageJournal.OP_DELETE.equals(record.get("op").getAsString())) {
+                removeIndexed(id);
+            } else {
+                putIndexed(id, gson.fromJson(record.get("entity"), typeParameterClass));
+                fingerprints.put(id, fingerprint(record.get("entity")));
+            }
+        }
+    }
+
+    static long versionOf(JsonElement entityTree) {
+        JsonElement version = entityTree.isJsonObject() ? entityTree.getAsJsonObject().get("version") : null;
+        return version == null ? 0 : version.getAsLong();
+    }
+
+    static long entityVersion(Object entity) {
+        return entity instanceof Versioned versioned ? versioned.getVersion() : 0;
+    }
+
+    /*
+    * Бэкенд перечитывает файлы без блокировок хранилища; пока идёт хотя бы одно перечитывание, putIndexed/removeIndexed
+    * запоминают свои изменения, а finishReload() накладывает их поверх прочитанного. Возвращает поколение
+    * */
+    long beginReloadTracking() {
+        synchronized (indexLock) {
+            if (reloadsInProgress++ == 0) {
+                changedDuringReload = new HashMap<>();
+            }
+            return reloadGeneration;
+        }
+    }
+
+    void endReloadTracking() {
+        synchronized (indexLock) {
+            if (--reloadsInProgress == 0) {
+                changedDuringReload = null;
+            }
+        }
+    }
+
+    // Хранилище не перечитывали с beginReloadTracking(), вернувшего generation
+    boolean isReloadGeneration(long generation) {
+        synchronized (indexLock) {
+            return reloadGeneration == generation;
+        }
+    }
+
+    /*
+    * Последний шаг перечитывания, после installSnapshot() и журнала: свои изменения из changedDuringReload
+    * накладываются поверх, индексы строятся заново. Вызывать под fileLock и indexLock между begin/endReloadTracking().
+    * */
+    void finishReload(int journalRecords, long bytesRead, long started, boolean migrated) {
+        Map<String, T> ownChanges = changedDuringReload;
+        changedDuringReload = null;
+        ownChanges.forEach((id, entity) -> {
+            if (entity == null) {
+                removeIndexed(id);
+            } else {
+                putIndexed(id, entity);
+                fingerprints.put(id, fingerprint(gson.toJsonTree(entity)));
+            }
+        });
+        changedDuringReload = new HashMap<>(); // Отслеживание продолжается до endReloadTracking()
+        reloadGeneration++;
+        rebuildIndexes();
+        loadStats = new LoadStats(entityCount(), journalRecords, bytesRead, System.nanoTime() - started, migrated, 0);
+    }
+
+    /*
+     * Объявляет вторичный индекс: ключ -> id сущностей. Вызывается из конструктора наследника,
+     * индекс сразу строится по загруженным данным и дальше поддерживается в save()/delete().
+     * */
+    protected void defineIndex(String indexName, Function<T, String> keyExtractor) {
+        defineIndex(indexName, keyExtractor, false);
+    }
+
+    // save() сущности, чей ключ уже занят другой сущностью, бросает IllegalArgumentException
+    protected void defineUniqueIndex(String indexName, Function<T, String> keyExtractor) {
+        defineIndex(indexName, keyExtractor, true);
+    }
+
+    /*
+    * Ленивое хранилище держит в памяти только offsets, а индексу нужен ключ каждой сущности -
+    * строить его пришлось бы полным чтением с диска. Поэтому индексы только у хранилищ без lazy().
+    * */
+    private void defineIndex(String indexName, Function<T, String> keyExtractor, boolean unique) {
+        if (cache != null) {
+            throw new IllegalStateException("Secondary index " + indexName + " requires every "
+                    + typeParameterClass.getSimpleName() + " in memory; remove lazy() from its StorageOptions");
+        }
+        SecondaryIndex<T> index = new SecondaryIndex<>(keyExtractor, unique);
+        synchronized (indexLock) {
+            materializeAll();
+            index.rebuild(entities.entrySet().iterator());
+            indexes.put(indexName, index);
+        }
+    }
+
+    // Все индексы за один проход по сущностям
+    private void rebuildIndexes() {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        synchronized (indexLock) {
+            indexes.values().forEach(SecondaryIndex::clear);
+            entryStream().forEach(entry -> {
+                for (SecondaryIndex<T> index : indexes.values()) {
+                    index.put(entry.getKey(), entry.getValue());
+                }
+            });
+        }
+    }
+
+    public List<T> findBy(String indexName, String key) {
+        SecondaryIndex<T> index = index(indexName);
+        List<T> result = new ArrayList<>();
+        for (String id : index.get(key)) {
+            T entity = getById(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /*
+    * Ключ, под которым id сейчас лежит в индексе, то есть значение на момент последнего save().
+    * Нужен, когда сущность изменили "на месте" и прежнее значение поля уже потеряно.
+    * */
+    public String indexedKey(String indexName, String id) {
+        return index(indexName).keyOf(id);
+    }
+
+    private SecondaryIndex<T> index(String indexName) {
+        SecondaryIndex<T> index = indexes.get(indexName);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index: " + indexName);
         }
+        return index;
     }
 
     public void save(T entity) {
+        saveTracked(entity);
+    }
+
+    // save(), возвращающий future записи на диск: в group commit mode он упадёт, если запись проиграет конфликт версий
+    CompletableFuture<Void> saveTracked(T entity) {
         String id = getId(entity);
-        entities.put(id, entity);
-        saveData();
+        CompletableFuture<Void> written;
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            syncWithDisk();
+            JsonElement tree = gson.toJsonTree(entity);
+            synchronized (indexLock) {
+                checkVersion(id, entity);
+                checkUnique(id, entity, Map.of(), Set.of());
+                if (!markChanged(id, entity, tree)) {
+                    skippedSaves.incrementAndGet();
+                    return CompletableFuture.completedFuture(null);
+                }
+                nextVersion(entity, tree);
+                putIndexed(id, entity);
+            }
+            mutations.incrementAndGet();
+            written = persist(List.of(StorageJournal.putRecord(id, tree)));
+        } finally {
+            lock.unlock();
+        }
+        fire(StorageEvent.Type.SAVED, id, entity, false);
+        return written;
+    }
+
+    /*
+    * Атомарный read-modify-write: пока updater работает, save/delete/update этой же сущности ждут,
+    * остальные сущности меняются параллельно. Если сущности нет, ничего не делает и возвращает null.
+    * */
+    public T update(String id, UnaryOperator<T> updater) {
+        return updateTracked(id, updater).result();
+    }
+
+    Tracked<T> updateTracked(String id, UnaryOperator<T> updater) {
+        return compute(id, current -> current == null ? null : updater.apply(current), false);
+    }
+
+    /*
+    * Как Map.compute: remapping получает текущую сущность (или null), результат сохраняется,
+    * null удаляет сущность.
+    * */
+    public T compute(String id, UnaryOperator<T> remapping) {
+        return compute(id, remapping, true).result();
+    }
+
+    // Результат операции вместе с future её записи на диск
+    record Tracked<R>(R result, CompletableFuture<Void> written) {
+    }
+
+    private Tracked<T> compute(String id, UnaryOperator<T> remapping, boolean deleteOnNull) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            syncWithDisk();
+            T current = getById(id);
+            T result = remapping.apply(current);
+            if (result == null) {
+                if (deleteOnNull && current != null) {
+                    return new Tracked<>(null, deleteTracked(id));
+                }
+                return new Tracked<>(null, CompletableFuture.completedFuture(null));
+            }
+            if (!getId(result).equals(id)) {
+                throw new IllegalArgumentException("Remapping changed id " + id + " to " + getId(result));
+            }
+            return new Tracked<>(result, saveTracked(result));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Блокировка полосы, в которую попадает id; одна на несколько сущностей, зато без карты блокировок
+    ReentrantLock lockFor(String id) {
+        return stripes[stripeOf(id)];
+    }
+
+    int stripeOf(String id) {
+        return (id.hashCode() & 0x7fffffff) % LOCK_STRIPES;
+    }
+
+    // Полосы берутся по возрастанию номера, поэтому два пакета с пересекающимися id не дедлочатся
+    private List<ReentrantLock> lockAll(Collection<String> ids) {
+        List<ReentrantLock> locks = ids.stream()
+                .map(this::stripeOf)
+                .distinct()
+                .sorted()
+                .map(stripe -> stripes[stripe])
+                .toList();
+        locks.forEach(ReentrantLock::lock);
+        return locks;
+    }
+
+    private static void unlockAll(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    /*
+    * Сущности изменяют "на месте", поэтому признак изменения - отпечаток сериализованного вида, а не флаг.
+    * Если он совпал с записанным, в памяти только подменяется экземпляр. Вызывать под indexLock.
+    * */
+    private boolean markChanged(String id, T entity, JsonElement tree) {
+        long fingerprint = fingerprint(tree);
+        Long previous = fingerprints.put(id, fingerprint);
+        if (previous != null && previous == fingerprint) {
+            entities.computeIfPresent(id, (key, old) -> entity);
+            return false;
+        }
+        return true;
+    }
+
+    /*
+    * Compare-and-set: копия устарела, если в хранилище уже лежит другой экземпляр с другой версией
+    * (его подменило изменение из другого процесса или потока). Вызывать под indexLock.
+    * */
+    private void checkVersion(String id, T entity) {
+        if (!(entity instanceof Versioned versioned)) {
+            return;
+        }
+        T current = getById(id);
+        if (current != null && current != entity && entityVersion(current) != versioned.getVersion()) {
+            throw new StaleEntityException(typeParameterClass.getSimpleName(), Set.of(id));
+        }
+    }
+
+    /*
+    * Ключ уникального индекса не должен быть занят другой сущностью. Сущности из той же пачки,
+    * которые удаляются или сами меняются, не считаются. Вызывать под indexLock.
+    * */
+    private void checkUnique(String id, T entity, Map<String, T> batchPuts, Collection<String> batchDeletes) {
+        for (Map.Entry<String, SecondaryIndex<T>> index : indexes.entrySet()) {
+            if (!index.getValue().isUnique()) {
+                continue;
+            }
+            String other = index.getValue().conflictFor(id, entity);
+            if (other != null && !batchDeletes.contains(other) && !batchPuts.containsKey(other)) {
+                throw new IllegalArgumentException(typeParameterClass.getSimpleName() + " " + id
+                        + " duplicates " + other + " in unique index " + index.getKey());
+            }
+        }
+    }
+
+    /*
+    * Проверки версий и уникальности для всей пачки до того, как что-то поменяется:
+    * транзакция вызывает это до записи в CommitJournal, чтобы туда не попала пачка, которая не применится.
+    * */
+    void validateBatch(Map<String, T> puts, Collection<String> deletes) {
+        synchronized (indexLock) {
+            Map<String, String> batchKeys = new HashMap<>();
+            for (Map.Entry<String, T> put : puts.entrySet()) {
+                checkVersion(put.getKey(), put.getValue());
+                checkUnique(put.getKey(), put.getValue(), puts, deletes);
+                for (Map.Entry<String, SecondaryIndex<T>> index : indexes.entrySet()) {
+                    String key = index.getValue().isUnique() ? index.getValue().keyFor(put.getValue()) : null;
+                    String other = key == null ? null : batchKeys.put(index.getKey() + '\0' + key, put.getKey());
+                    if (other != null) {
+                        throw new IllegalArgumentException(typeParameterClass.getSimpleName() + " " + put.getKey()
+                                + " duplicates " + other + " in unique index " + index.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void nextVersion(Object entity, JsonElement tree) {
+        if (entity instanceof Versioned versioned) {
+            versioned.setVersion(versioned.getVersion() + 1);
+            tree.getAsJsonObject().addProperty("version", versioned.getVersion());
+        }
+    }
+
+    // FNV-1a по компактному JSON; version не учитывается - её меняет сама запись
+    private static long fingerprint(JsonElement tree) {
+        long hash = 0xcbf29ce484222325L;
+        if (!tree.isJsonObject()) {
+            return fnv(hash, tree.toString());
+        }
+        for (Map.Entry<String, JsonElement> member : tree.getAsJsonObject().entrySet()) {
+            if (!member.getKey().equals("version")) {
+                hash = fnv(hash, member.getKey());
+                hash = fnv(hash, member.getValue().toString());
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private boolean contains(String id) {
+        return entities.containsKey(id) || offsets.containsKey(id) || unparsed.containsKey(id);
     }
 
     public T getById(String id) {
-        return entities.get(id);
+        T entity = entities.get(id);
+        if (entity != null) {
+            return entity;
+        }
+        if (cache != null) {
+            return getLazy(id);
+        }
+        if (unparsed.isEmpty()) {
+            return null;
+        }
+        // computeIfAbsent атомарен по ключу: запись разбирается один раз, параллельный getById ждёт результата
+        entity = entities.computeIfAbsent(id, key -> {
+            SnapshotIO.RawRecord raw = unparsed.get(key);
+            return raw == null ? null : snapshotIO.parse(raw);
+        });
+        unparsed.remove(id);
+        return entity;
+    }
+
+    private T getLazy(String id) {
+        if (!offsets.containsKey(id)) {
+            return null;
+        }
+        T entity = cache.get(id);
+        if (entity != null) {
+            return entity;
+        }
+        entity = readLazy(id);
+        if (entity != null) {
+            cache.putIf(id, entity, () -> offsets.containsKey(id));
+        }
+        return entity;
+    }
+
+    // offset берётся под read-lock: после перезаписи шарда старый offset указывал бы не туда
+    private T readLazy(String id) {
+        snapshotLock.readLock().lock();
+        try {
+            SnapshotIO.RecordRef ref = offsets.get(id);
+            return ref == null ? null : snapshotIO.load(ref);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /*
+    * Пачка getById: порядок результата - порядок ids, отсутствующие id пропускаются.
+    * В ленивом режиме промахи кэша читаются под одним read-lock в порядке положения в файле.
+    * */
+    public Map<String, T> getByIds(Collection<String> ids) {
+        Map<String, T> result = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String id : ids) {
+            if (result.containsKey(id)) {
+                continue;
+            }
+            T entity = entities.get(id);
+            if (entity == null && cache != null && offsets.containsKey(id)) {
+                entity = cache.get(id);
+                if (entity == null) {
+                    misses.add(id);
+                }
+            } else if (entity == null) {
+                entity = getById(id);
+            }
+            result.put(id, entity);
+        }
+        if (!misses.isEmpty()) {
+            readLazy(misses).forEach((id, entity) -> {
+                result.put(id, entity);
+                cache.putIf(id, entity, () -> offsets.containsKey(id));
+            });
+        }
+        result.values().removeIf(Objects::isNull);
+        return result;
+    }
+
+    private Map<String, T> readLazy(List<String> ids) {
+        Map<String, T> loaded = new HashMap<>();
+        snapshotLock.readLock().lock();
+        try {
+            ids.stream()
+                    .map(offsets::get)
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparing((SnapshotIO.RecordRef ref) -> ref.file().getPath())
+                            .thenComparingLong(SnapshotIO.RecordRef::offset))
+                    .forEach(ref -> {
+                        T entity = snapshotIO.load(ref);
+                        loaded.put(getId(entity), entity);
+                    });
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        return loaded;
+    }
+
+    /*
+    * Все сущности с id. В ленивом режиме шарды читаются с диска по одному, в кэш и в память они не попадают:
+    * полный скан не должен вытеснять из LRU то, с чем сейчас работают.
+    * */
+    private Stream<Map.Entry<String, T>> entryStream() {
+        materializeAll();
+        if (cache == null) {
+            return entities.entrySet().stream();
+        }
+        List<File> files = offsets.values().stream().map(SnapshotIO.RecordRef::file).distinct().toList();
+        Stream<Map.Entry<String, T>> unloaded = files.stream().flatMap(file -> readUnloaded(file).stream());
+        return Stream.concat(entities.entrySet().stream(), unloaded);
+    }
+
+    private List<Map.Entry<String, T>> readUnloaded(File file) {
+        List<Map.Entry<String, T>> result = new ArrayList<>();
+        snapshotLock.readLock().lock();
+        try {
+            snapshotIO.read(file, (id, entity) -> {
+                if (offsets.containsKey(id) && !entities.containsKey(id)) {
+                    T cached = cache.peek(id);
+                    result.add(Map.entry(id, cached != null ? cached : entity));
+                }
+            });
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // Полный скан всё равно затронет каждую сущность, поэтому отложенные записи разбираются сразу все
+    void materializeAll() {
+        if (!unparsed.isEmpty()) {
+            unparsed.keySet().forEach(this::getById);
+        }
     }
 
     public List<T> getAll() {
+        if (cache != null) {
+            return stream().collect(Collectors.toCollection(ArrayList::new));
+        }
+        materializeAll();
         return new ArrayList<>(entities.values());
     }
 
+    /*
+     * Чтение без копирования: живое read-only представление над мапой сущностей.
+     * Для сканов в сервисах вместо getAll(), который каждый раз копирует всё в новый список.
+     * */
+    public Collection<T> values() {
+        if (cache != null) {
+            return Collections.unmodifiableCollection(new AbstractCollection<>() {
+                @Override
+                public Iterator<T> iterator() {
+                    return stream().iterator();
+                }
+
+                @Override
+                public int size() {
+                    return entities.size() + offsets.size();
+                }
+            });
+        }
+        materializeAll();
+        return Collections.unmodifiableCollection(entities.values());
+    }
+
+    public void forEach(Consumer<? super T> action) {
+        if (cache != null) {
+            stream().forEach(action);
+            return;
+        }
+        materializeAll();
+        entities.values().forEach(action);
+    }
+
+    // Без кэша - прямо по values(): entrySet() у ConcurrentHashMap создаёт новую запись на каждую сущность
+    public Stream<T> stream() {
+        if (cache != null) {
+            return entryStream().map(Map.Entry::getValue);
+        }
+        materializeAll();
+        return entities.values().stream();
+    }
+
     public void delete(String id) {
-        entities.remove(id);
-        saveData();
+        deleteTracked(id);
     }
 
-    protected abstract String getId(T entity);
-}
+    CompletableFuture<Void> deleteTracked(String id) {
+        CompletableFuture<Void> written;
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            synchronized (indexLock) {
+                if (!contains(id)) {
+                    skippedSaves.incrementAndGet();
+                    return CompletableFuture.completedFuture(null);
+                }
+                removeIndexed(id);
+            }
+            mutations.incrementAndGet();
+            written = persist(List.of(StorageJournal.deleteRecord(id)));
+        } finally {
+            lock.unlock();
+        }
+        fire(StorageEvent.Type.DELETED, id, null, false);
+        return written;
+    }
+
+    // Массовое сохранение: в памяти по одной, на диск одним persist (импорт не переписывает файл на каждую сущность)
+    public void saveAll(Collection<T> entities) {
+        saveAllTracked(entities);
+    }
+
+    CompletableFuture<Void> saveAllTracked(Collection<T> entities) {
+        Map<String, T> puts = new LinkedHashMap<>();
+        for (T entity : entities) {
+            puts.put(getId(entity), entity);
+        }
+        return applyBatch(puts, List.of());
+    }
+
+    public void deleteAll(Collection<String> ids) {
+        applyBatch(Map.of(), ids);
+    }
+
+    // Применяет пачку изменений в памяти и пишет её одним persist (saveAll/deleteAll)
+    CompletableFuture<Void> applyBatch(Map<String, T> puts, Collection<String> deletes) {
+        Set<String> ids = new HashSet<>(puts.keySet());
+        ids.addAll(deletes);
+        List<ReentrantLock> locks = lockAll(ids);
+        PreparedBatch<T> batch;
+        List<StorageEvent<T>> events;
+        try {
+            batch = prepareBatch(puts, deletes);
+            events = applyPrepared(batch);
+        } finally {
+            unlockAll(locks);
+        }
+        events.forEach(this::fire);
+        return batch.written;
+    }
 
-// Local Date Adapter (needed for both versions)
-class LocalDateAdapter extends TypeAdapter<LocalDate> {
-    @Override
-    public void write(JsonWriter jsonWriter, LocalDate localDate) throws IOException {
-        jsonWriter.value(localDate.toString());
+    /*
+    * Пачка после проверок: изменившиеся сущности уже сериализованы с новой версией, но ни они сами,
+    * ни хранилище ещё не тронуты. records - ровно то, что запишут журнал, бэкенд и CommitJournal.
+    * */
+    static final class PreparedBatch<T> {
+        private final Map<String, T> changed = new LinkedHashMap<>();
+        private final Map<String, JsonElement> trees = new HashMap<>();
+        private final Map<String, T> unchanged = new LinkedHashMap<>();
+        private final List<String> deletes = new ArrayList<>();
+        private final List<JsonObject> records = new ArrayList<>();
+        private final List<Runnable> reservations = new ArrayList<>(); // Снятие резервов уникальных ключей
+        private CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+
+        JsonArray records() {
+            JsonArray array = new JsonArray();
+            records.forEach(array::add);
+            return array;
+        }
+    }
+
+    // Вызывать под полосами всех ids пачки; бросает то же, что validateBatch
+    PreparedBatch<T> prepareBatch(Map<String, T> puts, Collection<String> deletes) {
+        syncWithDisk();
+        PreparedBatch<T> batch = new PreparedBatch<>();
+        synchronized (indexLock) {
+            validateBatch(puts, deletes);
+            for (Map.Entry<String, T> put : puts.entrySet()) {
+                String id = put.getKey();
+                JsonElement tree = gson.toJsonTree(put.getValue());
+                Long previous = fingerprints.get(id);
+                if (previous != null && previous == fingerprint(tree)) {
+                    batch.unchanged.put(id, put.getValue());
+                    continue;
+                }
+                if (put.getValue() instanceof Versioned versioned) {
+                    tree.getAsJsonObject().addProperty("version", versioned.getVersion() + 1);
+                }
+                batch.changed.put(id, put.getValue());
+                batch.trees.put(id, tree);
+                batch.records.add(StorageJournal.putRecord(id, tree));
+                for (SecondaryIndex<T> index : indexes.values()) {
+                    if (index.isUnique()) {
+                        String key = index.reserve(id, put.getValue());
+                        batch.reservations.add(() -> index.release(key, id));
+                    }
+                }
+            }
+            for (String id : deletes) {
+                T current = getById(id);
+                if (current != null) {
+                    batch.deletes.add(id);
+                    // Версия удаляемой сущности - по ней восстановление отличит более позднюю запись
+                    batch.records.add(StorageJournal.deleteRecord(id, entityVersion(current)));
+                } else {
+                    skippedSaves.incrementAndGet();
+                }
+            }
+        }
+        return batch;
+    }
+
+    // Пачка не будет применена (упала другая часть транзакции): её уникальные ключи снова свободны
+    void discardPrepared(PreparedBatch<T> batch) {
+        batch.reservations.forEach(Runnable::run);
+        batch.reservations.clear();
+    }
+
+    /*
+    * Откат update() транзакции, которая не применилась: updater уже поменял сущность на месте,
+    * поэтому в хранилище кладётся новый экземпляр из сериализованного вида до изменения.
+    * */
+    void restore(String id, JsonElement original) {
+        synchronized (indexLock) {
+            if (entities.containsKey(id)) {
+                entities.put(id, gson.fromJson(original, typeParameterClass));
+            } else if (cache != null) {
+                cache.remove(id);
+            }
+        }
+    }
+
+    /*
+    * Применяет подготовленную пачку в памяти и пишет её одним persist. Вызывать под теми же полосами,
+    * что и prepareBatch. События возвращаются, чтобы вызывающий разослал их после снятия блокировок.
+    * */
+    List<StorageEvent<T>> applyPrepared(PreparedBatch<T> batch) {
+        return applyPrepared(batch, false);
+    }
+
+    // writeNow - записать сразу, мимо group commit: транзакция под exclusive() должна лечь на диск до снятия блокировки
+    List<StorageEvent<T>> applyPrepared(PreparedBatch<T> batch, boolean writeNow) {
+        List<StorageEvent<T>> events = new ArrayList<>();
+        synchronized (indexLock) {
+            discardPrepared(batch);
+            batch.unchanged.forEach((id, entity) -> {
+                skippedSaves.incrementAndGet();
+                entities.computeIfPresent(id, (key, old) -> entity);
+            });
+            batch.changed.forEach((id, entity) -> {
+                JsonElement tree = batch.trees.get(id);
+                if (entity instanceof Versioned versioned) {
+                    versioned.setVersion(versionOf(tree));
+                }
+                fingerprints.put(id, fingerprint(tree));
+                putIndexed(id, entity);
+                events.add(new StorageEvent<>(StorageEvent.Type.SAVED, id, entity, false));
+            });
+            for (String id : batch.deletes) {
+                removeIndexed(id);
+                events.add(new StorageEvent<>(StorageEvent.Type.DELETED, id, null, false));
+            }
+        }
+        if (!events.isEmpty()) {
+            mutations.addAndGet(events.size());
+            batch.written = writeNow ? write(batch.records) : persist(batch.records);
+        }
+        return events;
+    }
+
+    // Для StorageTransaction: пока action проверяет версии и пишет, другие экземпляры в это хранилище не пишут
+    <R> R exclusive(Supplier<R> action) {
+        return backend.exclusive(action);
+    }
+
+    // Для StorageTransaction: держит полосы всех ids, пока action читает и меняет сущности
+    <R> R withLocks(Collection<String> ids, Supplier<R> action) {
+        List<ReentrantLock> locks = lockAll(ids);
+        try {
+            return action.get();
+        } finally {
+            unlockAll(locks);
+        }
     }
 
-    @Override
-    public LocalDate read(JsonReader jsonReader) throws IOException {
-        return LocalDate.parse(jsonReader.nextString());
+    // Вызывать под indexLock
+    private void putIndexed(String id, T entity) {
+        unparsed.remove(id);
+        entities.put(id, entity);
+        // Сохранённая в этой сессии сущность закрепляется в entities, ссылка на файл больше не нужна
+        offsets.remove(id);
+        if (cache != null) {
+            cache.remove(id);
+        }
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.put(id, entity);
+        }
+        if (changedDuringReload != null) {
+            changedDuringReload.put(id, entity);
+        }
     }
-}
\ No newline at end of file
+
+    private void removeIndexed(String id) {
+        // Сначала срез: иначе параллельный getById успел бы разобрать его заново после удаления
+        unparsed.remove(id);
+        offsets.remove(id);
+        if (cache != null) {
+            cache.remove(id);
+        }
+        entities.remove(id);
+        fingerprints.remove(id);
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.remove(id);
+        }
+        if (changedDuringReload != null) {
+            changedDuringReload.put(id, null);
+        }
+    }
+
+    protected abstract String getId(T entity);
+}
@@ -0,0 +1,120 @@
+package core.services.base;
+
+import java.util.*;
+import java.util.function.Function;
+
+/*
+ * Вторичный индекс: ключ (например clientId) -> множество id сущностей.
+ * Для каждого id запоминается ключ, под которым он лежит, поэтому индекс корректно
+ * обновляется даже когда сущность изменили "на месте" перед save().
+ * Уникальный индекс сам ничего не запрещает - JsonStorageService спрашивает conflictFor() перед записью.
+ * Ключи проверенной, но ещё не применённой пачки резервируются (reserve), чтобы параллельная пачка их не заняла.
+ * */
+class SecondaryIndex<T> {
+    private final Function<T, String> keyExtractor;
+    private final boolean unique;
+    private final Map<String, Set<String>> idsByKey = new HashMap<>();
+    private final Map<String, String> keyById = new HashMap<>();
+    private final Map<String, String> reservedIds = new HashMap<>(); // ключ -> id из подготовленной пачки
+
+    SecondaryIndex(Function<T, String> keyExtractor, boolean unique) {
+        this.keyExtractor = keyExtractor;
+        this.unique = unique;
+    }
+
+    boolean isUnique() {
+        return unique;
+    }
+
+    String keyFor(T entity) {
+        return keyExtractor.apply(entity);
+    }
+
+    // id другой сущности с тем же ключом или null
+    synchronized String conflictFor(String id, T entity) {
+        String key = keyExtractor.apply(entity);
+        Set<String> ids = key == null ? null : idsByKey.get(key);
+        String reserved = key == null ? null : reservedIds.get(key);
+        if (reserved != null && !reserved.equals(id)) {
+            return reserved;
+        }
+        if (ids == null) {
+            return null;
+        }
+        for (String other : ids) {
+            if (!other.equals(id)) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    // Возвращает зарезервированный ключ (null, если у сущности ключа нет) - его потом передают в release()
+    synchronized String reserve(String id, T entity) {
+        String key = keyExtractor.apply(entity);
+        if (key != null) {
+            reservedIds.put(key, id);
+        }
+        return key;
+    }
+
+    synchronized void release(String key, String id) {
+        if (key != null) {
+            reservedIds.remove(key, id);
+        }
+    }
+
+    synchronized void put(String id, T entity) {
+        String newKey = keyExtractor.apply(entity);
+        String oldKey = keyById.get(id);
+        if (Objects.equals(oldKey, newKey)) {
+            return;
+        }
+        removeFromKey(id, oldKey);
+        if (newKey == null) {
+            keyById.remove(id);
+        } else {
+            keyById.put(id, newKey);
+            idsByKey.computeIfAbsent(newKey, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    synchronized void remove(String id) {
+        removeFromKey(id, keyById.remove(id));
+    }
+
+    synchronized String keyOf(String id) {
+        return keyById.get(id);
+    }
+
+    synchronized List<String> get(String key) {
+        Set<String> ids = idsByKey.get(key);
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+
+    synchronized void clear() {
+        idsByKey.clear();
+        keyById.clear();
+    }
+
+    synchronized void rebuild(Iterator<Map.Entry<String, T>> entities) {
+        clear();
+        while (entities.hasNext()) {
+            Map.Entry<String, T> entry = entities.next();
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void removeFromKey(String id, String key) {
+        if (key == null) {
+            return;
+        }
+        Set<String> ids = idsByKey.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByKey.remove(key);
+            }
+        }
+    }
+}
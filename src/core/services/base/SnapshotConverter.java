@@ -0,0 +1,44 @@
+package core.services.base;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import core.services.base.adapters.ModelAdapters;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Конвертер снапшотов между JSON и бинарным форматом. Формат определяется по расширению.
+ * Пример: java core.services.base.SnapshotConverter Subscription files/subscriptions/subscriptions.0.bin out.json
+ * */
+public final class SnapshotConverter {
+    private SnapshotConverter() {
+    }
+
+    public static <T> int convert(Class<T> type, File source, File target) {
+        Gson gson = ModelAdapters.registerAll(new GsonBuilder())
+                .setPrettyPrinting()
+                .create();
+        SnapshotIO<T> snapshotIO = new SnapshotIO<>(gson, type);
+        Map<String, T> entities = new LinkedHashMap<>();
+        snapshotIO.read(source, entities::put);
+        snapshotIO.write(target, entities.entrySet().iterator());
+        return entities.size();
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: SnapshotConverter <Client|Manager|Trainer|Passport|Subscription|TrainingClass> <source> <target>");
+            System.exit(1);
+        }
+        Class<?> type = ModelAdapters.modelType(args[0]);
+        File source = new File(args[1]);
+        File target = new File(args[2]);
+        long started = System.nanoTime();
+        int count = convert(type, source, target);
+        System.out.printf("Converted %d %s: %s (%d bytes) -> %s (%d bytes) in %.1f ms%n",
+                count, type.getSimpleName(), source, source.length(), target, target.length(),
+                (System.nanoTime() - started) / 1_000_000.0);
+    }
+}
@@ -0,0 +1,22 @@
+package core.services.base;
+
+import java.io.File;
+
+public enum SnapshotFormat {
+    JSON(".json"),
+    BINARY(".bin"); // Записи с длиной впереди, UUID - два long, даты - номер дня эпохи в int
+
+    private final String extension;
+
+    SnapshotFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static SnapshotFormat of(File file) {
+        return file.getName().endsWith(BINARY.extension) ? BINARY : JSON;
+    }
+}
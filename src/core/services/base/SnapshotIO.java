@@ -0,0 +1,359 @@
+package core.services.base;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import core.models.base.Versioned;
+import core.services.base.adapters.BinaryCodec;
+import core.services.base.adapters.BinaryFields;
+import core.services.base.adapters.ModelAdapters;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/*
+ * Чтение и запись одного файла снапшота в любом из форматов.
+ * JSON:   { "id": {...}, ... }
+ * BINARY: MAGIC, VERSION, затем до конца файла записи [int длина][id][сущность][long version]
+ *         (в файлах VERSION 1 версии сущности нет)
+ * */
+class SnapshotIO<T> {
+    static final int BINARY_MAGIC = 0x44434253; // "DCBS"
+    static final int BINARY_VERSION = 2;
+
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private final Gson gson;
+    private final Class<T> type;
+    private final boolean memoryMapped;
+
+    /*
+    * Сырая, ещё не разобранная запись: срез буфера файла (mapped или в куче) и формат, в котором она лежит.
+    * Для JSON это текст значения, для BINARY - байты сущности после id.
+    * binaryVersion - версия бинарного файла, из которого взята запись (для JSON 0).
+    * */
+    record RawRecord(ByteBuffer bytes, SnapshotFormat format, int binaryVersion) {
+    }
+
+    // Положение записи в файле снапшота: по нему сущность дочитывается с диска, в памяти остаётся только ссылка
+    record RecordRef(File file, long offset, int length, SnapshotFormat format, int binaryVersion) {
+        // Байты такой записи можно копировать в текущий формат без разбора
+        boolean isCurrent(SnapshotFormat target) {
+            return format == target && (format == SnapshotFormat.JSON || binaryVersion == BINARY_VERSION);
+        }
+    }
+
+    SnapshotIO(Gson gson, Class<T> type) {
+        this(gson, type, false);
+    }
+
+    // На Windows живой mapping не даёт заменить файл при следующей записи, поэтому там читаем обычными потоками
+    SnapshotIO(Gson gson, Class<T> type, boolean memoryMapped) {
+        this.gson = gson;
+        this.type = type;
+        this.memoryMapped = memoryMapped && !WINDOWS;
+    }
+
+    // Кодек берётся только когда действительно встретился бинарный файл
+    private BinaryCodec<T> codec() {
+        return ModelAdapters.binaryCodec(type);
+    }
+
+    void read(File file, BiConsumer<String, T> sink) {
+        if (file.length() == 0) {
+            return;
+        }
+        try {
+            if (SnapshotFormat.of(file) == SnapshotFormat.BINARY) {
+                readBinary(load(file), file, (id, buffer, offset, length, binaryVersion) ->
+                        sink.accept(id, readBinaryEntity(dataInput(buffer.slice(offset, length)), binaryVersion)));
+            } else if (memoryMapped) {
+                readJson(new ByteBufferReader(map(file)), sink);
+            } else {
+                readJson(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)), sink);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Failed to load data from " + file + ": " + e.getMessage());
+        }
+    }
+
+    /*
+    * Читает только границы записей, сами сущности не разбираются.
+    * Срезы ссылаются на mapped буфер (или на байты файла в куче), разбор - через parse() при первом обращении.
+    * */
+    void readRaw(File file, BiConsumer<String, RawRecord> sink) {
+        if (file.length() == 0) {
+            return;
+        }
+        SnapshotFormat format = SnapshotFormat.of(file);
+        try {
+            scanRecords(load(file), file, (id, buffer, offset, length, binaryVersion) ->
+                    sink.accept(id, new RawRecord(buffer.slice(offset, length), format, binaryVersion)));
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Failed to load data from " + file + ": " + e.getMessage());
+        }
+    }
+
+    /*
+    * Строит только индекс id -> положение записи. Буфер файла нужен лишь на время сканирования.
+    * */
+    void index(File file, BiConsumer<String, RecordRef> sink) {
+        if (file.length() == 0) {
+            return;
+        }
+        SnapshotFormat format = SnapshotFormat.of(file);
+        try {
+            scanRecords(load(file), file, (id, buffer, offset, length, binaryVersion) ->
+                    sink.accept(id, new RecordRef(file, offset, length, format, binaryVersion)));
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Failed to index " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Дочитывает одну запись позиционным чтением, без чтения остального файла
+    T load(RecordRef ref) {
+        try (RecordReader reader = new RecordReader()) {
+            return parse(reader.readRaw(ref));
+        }
+    }
+
+    // Держит открытыми каналы файлов, из которых копируются записи, чтобы не открывать файл на каждую
+    private static class RecordReader implements Closeable {
+        private final Map<File, FileChannel> channels = new HashMap<>();
+
+        RawRecord readRaw(RecordRef ref) {
+            return new RawRecord(read(ref), ref.format(), ref.binaryVersion());
+        }
+
+        ByteBuffer read(RecordRef ref) {
+            ByteBuffer bytes = ByteBuffer.allocate(ref.length());
+            try {
+                FileChannel channel = channels.get(ref.file());
+                if (channel == null) {
+                    channel = FileChannel.open(ref.file().toPath(), StandardOpenOption.READ);
+                    channels.put(ref.file(), channel);
+                }
+                while (bytes.hasRemaining()) {
+                    if (channel.read(bytes, ref.offset() + bytes.position()) < 0) {
+                        throw new IOException("Unexpected end of " + ref.file());
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read record from " + ref.file() + ": " + e.getMessage());
+            }
+            return bytes.flip();
+        }
+
+        @Override
+        public void close() {
+            for (FileChannel channel : channels.values()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close snapshot channel: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    T parse(RawRecord raw) {
+        ByteBuffer bytes = raw.bytes().duplicate();
+        try {
+            if (raw.format() == SnapshotFormat.BINARY) {
+                return readBinaryEntity(dataInput(bytes), raw.binaryVersion());
+            }
+            return gson.fromJson(new JsonReader(new ByteBufferReader(bytes)), type);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Failed to parse " + type.getSimpleName() + " record: " + e.getMessage());
+        }
+    }
+
+    /*
+    * Сущности разбираются прямо из JsonReader, без промежуточного HashMap на весь файл.
+    * Для mapped файла Reader декодирует UTF-8 из буфера сразу в char-буфер JsonReader.
+    * */
+    private void readJson(Reader source, BiConsumer<String, T> sink) throws IOException {
+        try (JsonReader reader = new JsonReader(source)) {
+            if (reader.peek() == JsonToken.NULL) {
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String id = reader.nextName();
+                T entity = gson.fromJson(reader, type);
+                if (entity != null) {
+                    sink.accept(id, entity);
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    private void scanRecords(ByteBuffer buffer, File file, RecordSink sink) throws IOException {
+        if (SnapshotFormat.of(file) == SnapshotFormat.BINARY) {
+            readBinary(buffer, file, sink);
+        } else {
+            JsonRecordScanner.scan(buffer, (id, offset, length) -> sink.accept(id, buffer, offset, length, 0));
+        }
+    }
+
+    // sink получает id и границы байтов сущности в буфере; записи не копируются в отдельные массивы
+    private void readBinary(ByteBuffer buffer, File file, RecordSink sink) throws IOException {
+        int binaryVersion = readBinaryHeader(dataInput(buffer), file);
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Truncated record in " + file);
+            }
+            ByteBuffer record = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            String id = BinaryFields.readId(dataInput(record));
+            sink.accept(id, buffer, buffer.position() - length + record.position(), length - record.position(), binaryVersion);
+        }
+    }
+
+    private interface RecordSink {
+        void accept(String id, ByteBuffer buffer, int offset, int length, int binaryVersion) throws IOException;
+    }
+
+    private T readBinaryEntity(DataInput in, int binaryVersion) throws IOException {
+        T entity = codec().read(in);
+        long version = binaryVersion >= 2 ? in.readLong() : 0;
+        if (entity instanceof Versioned versioned) {
+            versioned.setVersion(version);
+        }
+        return entity;
+    }
+
+    private void writeBinaryEntity(DataOutput out, BinaryCodec<T> codec, T entity) throws IOException {
+        codec.write(out, entity);
+        out.writeLong(entity instanceof Versioned versioned ? versioned.getVersion() : 0);
+    }
+
+    private ByteBuffer load(File file) throws IOException {
+        return memoryMapped ? map(file) : ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + file);
+            }
+            // mapping остаётся валидным и после закрытия канала
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static DataInputStream dataInput(ByteBuffer buffer) {
+        return new DataInputStream(new ByteBufferInputStream(buffer));
+    }
+
+    // Возвращает версию формата файла; старые версии читаются, пишется всегда текущая
+    static int readBinaryHeader(DataInput in, File file) throws IOException {
+        if (in.readInt() != BINARY_MAGIC) {
+            throw new IOException("Not a binary snapshot: " + file);
+        }
+        int version = in.readInt();
+        if (version < 1 || version > BINARY_VERSION) {
+            throw new IOException("Unsupported binary snapshot version " + version + " in " + file);
+        }
+        return version;
+    }
+
+    // Пишется во временный файл и переносится поверх старого, поэтому оборванного файла после сбоя не бывает
+    long write(File file, Iterator<Map.Entry<String, T>> entries) {
+        return write(file, entries, Collections.emptyIterator());
+    }
+
+    /*
+    * refs - записи, которые не разбирались: в том же формате их байты копируются как есть,
+    * в другом формате запись разбирается и кодируется заново. Возвращает размер записанного файла.
+    * */
+    long write(File file, Iterator<Map.Entry<String, T>> entries, Iterator<Map.Entry<String, RecordRef>> refs) {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            if (SnapshotFormat.of(file) == SnapshotFormat.BINARY) {
+                writeBinary(tempFile, entries, refs);
+            } else {
+                writeJson(tempFile, entries, refs);
+            }
+            long bytes = tempFile.length();
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return bytes;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save data: " + e.getMessage());
+        }
+    }
+
+    private void writeJson(File file, Iterator<Map.Entry<String, T>> entries,
+                           Iterator<Map.Entry<String, RecordRef>> refs) throws IOException {
+        try (JsonWriter writer = gson.newJsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+             RecordReader reader = new RecordReader()) {
+            writer.beginObject();
+            while (entries.hasNext()) {
+                Map.Entry<String, T> entry = entries.next();
+                writer.name(entry.getKey());
+                gson.toJson(entry.getValue(), type, writer);
+            }
+            while (refs.hasNext()) {
+                Map.Entry<String, RecordRef> ref = refs.next();
+                writer.name(ref.getKey());
+                if (ref.getValue().isCurrent(SnapshotFormat.JSON)) {
+                    ByteBuffer bytes = reader.read(ref.getValue());
+                    writer.jsonValue(new String(bytes.array(), 0, bytes.limit(), StandardCharsets.UTF_8));
+                } else {
+                    gson.toJson(parse(reader.readRaw(ref.getValue())), type, writer);
+                }
+            }
+            writer.endObject();
+        }
+    }
+
+    private void writeBinary(File file, Iterator<Map.Entry<String, T>> entries,
+                             Iterator<Map.Entry<String, RecordRef>> refs) throws IOException {
+        BinaryCodec<T> codec = codec();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+        DataOutputStream recordOut = new DataOutputStream(recordBytes);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+             RecordReader reader = new RecordReader()) {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            while (entries.hasNext()) {
+                Map.Entry<String, T> entry = entries.next();
+                recordBytes.reset();
+                BinaryFields.writeId(recordOut, entry.getKey());
+                writeBinaryEntity(recordOut, codec, entry.getValue());
+                recordOut.flush();
+                out.writeInt(recordBytes.size());
+                recordBytes.writeTo(out);
+            }
+            while (refs.hasNext()) {
+                Map.Entry<String, RecordRef> ref = refs.next();
+                recordBytes.reset();
+                BinaryFields.writeId(recordOut, ref.getKey());
+                if (ref.getValue().isCurrent(SnapshotFormat.BINARY)) {
+                    ByteBuffer bytes = reader.read(ref.getValue());
+                    recordOut.write(bytes.array(), 0, bytes.limit());
+                } else {
+                    writeBinaryEntity(recordOut, codec, parse(reader.readRaw(ref.getValue())));
+                }
+                recordOut.flush();
+                out.writeInt(recordBytes.size());
+                recordBytes.writeTo(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package core.services.base;
+
+import java.util.Set;
+
+/*
+ * save() устаревшей копии: сущность уже изменил или удалил другой экземпляр приложения (или другой поток).
+ * Нужно перечитать сущность через getById() и повторить изменение.
+ * */
+public class StaleEntityException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Set<String> ids;
+
+    public StaleEntityException(String type, Set<String> ids) {
+        super(type + " " + String.join(", ", ids) + " was modified concurrently");
+        this.ids = Set.copyOf(ids);
+    }
+
+    public Set<String> getIds() {
+        return ids;
+    }
+}
@@ -0,0 +1,87 @@
+package core.services.base;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/*
+ * Куда JsonStorageService сохраняет сущности. Сущности в памяти, индексы, блокировки, версии,
+ * события и транзакции остаются в JsonStorageService - бэкенд только отдаёт содержимое при старте
+ * и принимает пачки изменений. Выбирается через StorageBackends.
+ * Бэкенду, который просто хранит строки (память, SQL), хватает load() и write(); остальные методы - хуки
+ * для файлового JsonFileStorageBackend с журналом и общей папкой нескольких экземпляров.
+ * */
+public interface StorageBackend<T> {
+    // Всё содержимое хранилища, по одной сущности
+    void load(BiConsumer<String, T> sink);
+
+    // Изменения одного save/delete/транзакции; применяются целиком или не применяются. Возвращает записанные байты
+    long write(Map<String, JsonElement> puts, Collection<String> deletes);
+
+    // Что прочитал open() сверх самих сущностей - для JsonStorageService.LoadStats
+    record Opened(int journalRecords, long bytesRead, boolean migrated) {
+    }
+
+    // Записанные байты и id записей, которые не записаны: другой экземпляр успел изменить эти сущности раньше
+    record Appended(long bytes, Set<String> rejected) {
+    }
+
+    // Начальная загрузка в память хранилища; по умолчанию это load()
+    default Opened open(BiConsumer<String, T> sink) {
+        load(sink);
+        return new Opened(0, 0, false);
+    }
+
+    // Признак того, что содержимое переживает процесс: только тогда транзакции пишутся в CommitJournal
+    default boolean isPersistent() {
+        return true;
+    }
+
+    /*
+    * Пачка записей журнала (PUT/DELETE, см. StorageJournal) от одного persist или flush.
+    * По умолчанию записи схлопываются по id (побеждает последняя) и уходят в write() одной пачкой.
+    * */
+    default Appended append(List<JsonObject> records) {
+        Map<String, JsonElement> puts = new LinkedHashMap<>();
+        Set<String> deletes = new LinkedHashSet<>();
+        for (JsonObject record : records) {
+            String id = record.get("id").getAsString();
+            if (StorageJournal.OP_DELETE.equals(record.get("op").getAsString())) {
+                puts.remove(id);
+                deletes.add(id);
+            } else {
+                deletes.remove(id);
+                puts.put(id, record.get("entity"));
+            }
+        }
+        return new Appended(write(puts, deletes), Set.of());
+    }
+
+    // Подтянуть в память изменения других экземпляров до проверки версий; бэкенду без общего доступа нечего делать
+    default void refresh() {
+    }
+
+    /*
+    * Выполняет action, не давая другим экземплярам писать в хранилище, и перед этим подтягивает их изменения.
+    * Так транзакция проверяет версии и пишет без окна между ними. Бэкенду без общего доступа нечего блокировать.
+    * */
+    default <R> R exclusive(Supplier<R> action) {
+        return action.get();
+    }
+
+    // Сжать накопленное с прошлого раза. Возвращает записанные байты
+    default long checkpoint() {
+        return 0;
+    }
+
+    default void close() {
+    }
+}
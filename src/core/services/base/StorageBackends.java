@@ -0,0 +1,46 @@
+package core.services.base;
+
+import com.google.gson.Gson;
+
+/*
+ * Выбор бэкенда для всех хранилищ сразу, системными свойствами при запуске:
+ *   -Ddanceclub.storage=json|memory|sql   (по умолчанию json - файлы в files/ с опциями из StorageOptions;
+ *                                          memory не трогает диск вообще)
+ *   -Ddanceclub.storage.url=jdbc:...      (для sql; по умолчанию H2-файл files/danceclub)
+ * JDBC-драйвер с приложением не поставляется: для sql его jar кладётся в lib/ рядом с gson и добавляется
+ * в classpath, для URL по умолчанию это H2 (com.h2database:h2, например lib/h2-2.2.224.jar):
+ *   java -cp out:lib/gson-2.10.1.jar:lib/h2-2.2.224.jar -Ddanceclub.storage=sql Main
+ * Подойдёт любая встроенная база с JDBC 4 драйвером (SQLite, Derby) - тогда нужен её jar и свой danceclub.storage.url.
+ * */
+public final class StorageBackends {
+    public static final String STORAGE_PROPERTY = "danceclub.storage";
+    public static final String URL_PROPERTY = "danceclub.storage.url";
+    public static final String DEFAULT_URL = "jdbc:h2:./files/danceclub";
+
+    public enum Kind {
+        JSON, MEMORY, SQL
+    }
+
+    private StorageBackends() {
+    }
+
+    public static Kind configured() {
+        String value = System.getProperty(STORAGE_PROPERTY, "json").trim();
+        try {
+            return Kind.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + STORAGE_PROPERTY + " '" + value + "', expected json, memory or sql");
+        }
+    }
+
+    // name - имя файлов (таблицы) хранилища, например clients
+    static <T> StorageBackend<T> create(Kind kind, JsonStorageService<T> storage, String name) {
+        Gson gson = storage.gson;
+        Class<T> type = storage.typeParameterClass;
+        return switch (kind) {
+            case JSON -> new JsonFileStorageBackend<>(storage, name);
+            case MEMORY -> new InMemoryStorageBackend<>(gson, type);
+            case SQL -> new JdbcStorageBackend<>(gson, type, System.getProperty(URL_PROPERTY, DEFAULT_URL), name);
+        };
+    }
+}
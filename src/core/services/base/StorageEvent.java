@@ -0,0 +1,13 @@
+package core.services.base;
+
+/*
+ * Изменение в хранилище. external = изменение пришло из файлов другого экземпляра приложения.
+ * Для RELOADED id и entity равны null: хранилище перечитано целиком.
+ * */
+public record StorageEvent<T>(Type type, String id, T entity, boolean external) {
+    public enum Type {
+        SAVED,
+        DELETED,
+        RELOADED
+    }
+}
@@ -0,0 +1,169 @@
+package core.services.base;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/*
+ * Append-only лог изменений. Одна строка = одна мутация в компактном JSON:
+ * {"op":"PUT","id":"...","entity":{...}} или {"op":"DELETE","id":"..."}
+ * */
+class StorageJournal {
+    static final String OP_PUT = "PUT";
+    static final String OP_DELETE = "DELETE";
+    // Метка этого процесса в записях: при чтении журнала, дописанного другим экземпляром, свои записи пропускаются
+    static final String ORIGIN = Long.toHexString(new Random().nextLong());
+
+    private final File file;
+    private int recordCount;
+
+    StorageJournal(String filePath) {
+        this.file = new File(filePath);
+    }
+
+    static JsonObject putRecord(String id, JsonElement entity) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", OP_PUT);
+        record.addProperty("id", id);
+        record.addProperty("origin", ORIGIN);
+        record.add("entity", entity);
+        return record;
+    }
+
+    static JsonObject deleteRecord(String id) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", OP_DELETE);
+        record.addProperty("id", id);
+        record.addProperty("origin", ORIGIN);
+        return record;
+    }
+
+    static JsonObject deleteRecord(String id, long version) {
+        JsonObject record = deleteRecord(id);
+        record.addProperty("version", version);
+        return record;
+    }
+
+    synchronized long append(JsonObject record) {
+        return append(List.of(record));
+    }
+
+    // Пачка записей дописывается одним открытием файла (group commit). Возвращает число записанных байт
+    synchronized long append(List<JsonObject> records) {
+        long bytes = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
+            for (JsonObject record : records) {
+                byte[] line = (record.toString() + '\n').getBytes(StandardCharsets.UTF_8);
+                out.write(line);
+                bytes += line.length;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to journal: " + e.getMessage());
+        }
+        recordCount += records.size();
+        return bytes;
+    }
+
+    // Возвращает число применённых записей. Оборванные строки (падение посреди дописывания) пропускаются
+    synchronized int replay(Consumer<JsonObject> consumer) {
+        recordCount = 0;
+        if (!file.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonObject record;
+                try {
+                    record = JsonParser.parseString(line).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    System.err.println("Skipping torn journal record in " + file + ": " + e.getMessage());
+                    continue;
+                }
+                consumer.accept(record);
+                recordCount++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to replay journal: " + e.getMessage());
+        }
+        return recordCount;
+    }
+
+    static boolean isOwn(JsonObject record) {
+        JsonElement origin = record.get("origin");
+        return origin != null && ORIGIN.equals(origin.getAsString());
+    }
+
+    /*
+    * Дочитывает записи, появившиеся после offset. Недописанная последняя строка не трогается,
+    * её прочитает следующий вызов. Возвращает offset после последней целой строки.
+    * */
+    synchronized long readFrom(long offset, Consumer<JsonObject> consumer) {
+        byte[] tail;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length <= offset) {
+                return offset;
+            }
+            tail = new byte[(int) (length - offset)];
+            in.seek(offset);
+            in.readFully(tail);
+        } catch (FileNotFoundException e) {
+            return offset;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read journal: " + e.getMessage());
+        }
+        int lineStart = 0;
+        for (int i = 0; i < tail.length; i++) {
+            if (tail[i] != '\n') {
+                continue;
+            }
+            String line = new String(tail, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            lineStart = i + 1;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                consumer.accept(JsonParser.parseString(line).getAsJsonObject());
+                recordCount++;
+            } catch (JsonParseException | IllegalStateException e) {
+                System.err.println("Skipping torn journal record in " + file + ": " + e.getMessage());
+            }
+        }
+        return offset + lineStart;
+    }
+
+    // Весь журнал с начала, счётчик записей считается заново. Возвращает offset после последней целой строки
+    synchronized long readAll(Consumer<JsonObject> consumer) {
+        recordCount = 0;
+        return readFrom(0, consumer);
+    }
+
+    long length() {
+        return file.length();
+    }
+
+    synchronized void truncate() {
+        try {
+            new FileOutputStream(file, false).close();
+            recordCount = 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to truncate journal: " + e.getMessage());
+        }
+    }
+
+    synchronized int size() {
+        return recordCount;
+    }
+}
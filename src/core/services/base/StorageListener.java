@@ -0,0 +1,10 @@
+package core.services.base;
+
+/*
+ * Вызывается в потоке, который сделал изменение: для своих мутаций это вызывающий поток,
+ * для внешних - поток storage-watcher. UI должен перекладывать работу в EDT через SwingUtilities.invokeLater.
+ * */
+@FunctionalInterface
+public interface StorageListener<T> {
+    void onChange(StorageEvent<T> event);
+}
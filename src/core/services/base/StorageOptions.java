@@ -0,0 +1,130 @@
+package core.services.base;
+
+/*
+ * Настройки хранилища. Каждая *StorageService передаёт свои опции в конструктор JsonStorageService.
+ * */
+public class StorageOptions {
+    private boolean journaled;
+    private int checkpointThreshold = 1000;
+    private long groupCommitWindowMillis;
+    private int shardCount = 1;
+    private SnapshotFormat format = SnapshotFormat.JSON;
+    private boolean memoryMapped;
+    private boolean deferParsing;
+    private int lazyCacheSize;
+    private boolean watched;
+
+    public static StorageOptions defaults() {
+        return new StorageOptions();
+    }
+
+    // Каждое изменение дописывается в журнал, снапшот переписывается раз в checkpointThreshold записей
+    public StorageOptions journaled(int checkpointThreshold) {
+        if (checkpointThreshold <= 0) {
+            throw new IllegalArgumentException("Checkpoint threshold must be positive");
+        }
+        this.journaled = true;
+        this.checkpointThreshold = checkpointThreshold;
+        return this;
+    }
+
+    // Изменения копятся в очереди и пишутся потоком flusher раз в окно, а не на каждый вызов
+    public StorageOptions groupCommit(long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Group commit window must be positive");
+        }
+        this.groupCommitWindowMillis = windowMillis;
+        return this;
+    }
+
+    // Сущности раскладываются по shardCount файлам по хешу id; изменение переписывает только свой шард
+    public StorageOptions sharded(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    // Снапшот в другом формате конвертируется при загрузке
+    public StorageOptions format(SnapshotFormat format) {
+        this.format = format;
+        return this;
+    }
+
+    // Снапшоты читаются через FileChannel.map, а не потоком (на Windows не действует)
+    public StorageOptions memoryMapped() {
+        this.memoryMapped = true;
+        return this;
+    }
+
+    // При старте ищутся только границы записей, сущность разбирается при первом обращении. Полный скан и индексы разбирают всё
+    public StorageOptions deferParsing() {
+        this.deferParsing = true;
+        return this;
+    }
+
+    /*
+    * При старте строится только индекс id -> смещение в файле; getById читает запись с диска через LRU-кэш
+    * на cacheSize сущностей. Сохранённые за сессию сущности остаются в памяти.
+    * getAll/values/stream на каждый вызов читают все шарды с диска, вторичные индексы запрещены:
+    * режим для хранилищ, которые читают в основном по id.
+    * */
+    public StorageOptions lazy(int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.lazyCacheSize = cacheSize;
+        return this;
+    }
+
+    // Изменения, которые другой экземпляр приложения пишет в ту же папку, подхватываются и рассылаются слушателям
+    public StorageOptions watched() {
+        this.watched = true;
+        return this;
+    }
+
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    public int getCheckpointThreshold() {
+        return checkpointThreshold;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommitWindowMillis > 0;
+    }
+
+    public long getGroupCommitWindowMillis() {
+        return groupCommitWindowMillis;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public SnapshotFormat getFormat() {
+        return format;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public boolean isDeferParsing() {
+        return deferParsing;
+    }
+
+    public boolean isLazy() {
+        return lazyCacheSize > 0;
+    }
+
+    public int getLazyCacheSize() {
+        return lazyCacheSize;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+}
@@ -0,0 +1,209 @@
+package core.services.base;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/*
+ * Unit of work поверх нескольких хранилищ. Изменения копятся в памяти и на commit()
+ * пишутся один раз в каждое затронутое хранилище. Перед применением вся транзакция
+ * сохраняется в общий CommitJournal, поэтому после падения посередине хранилища
+ * при следующей загрузке доиграют свою часть - висячих ссылок не остаётся.
+ * update() откладывает read-modify-write до commit(): там сущность читается и меняется
+ * под блокировками её полосы, так что параллельные транзакции над ней не теряют изменений.
+ * */
+public class StorageTransaction {
+    private final Map<JsonStorageService<?>, StagedChanges<?>> changes = new LinkedHashMap<>();
+    private boolean committed;
+
+    public <T> void save(JsonStorageService<T> storage, T entity) {
+        StagedChanges<T> staged = changesFor(storage);
+        String id = storage.getId(entity);
+        staged.deletes.remove(id);
+        staged.updates.remove(id);
+        staged.puts.put(id, entity);
+    }
+
+    public void delete(JsonStorageService<?> storage, String id) {
+        StagedChanges<?> staged = changesFor(storage);
+        staged.puts.remove(id);
+        staged.updates.remove(id);
+        staged.deletes.add(id);
+    }
+
+    public <T> void saveAll(JsonStorageService<T> storage, Collection<T> entities) {
+        for (T entity : entities) {
+            save(storage, entity);
+        }
+    }
+
+    public void deleteAll(JsonStorageService<?> storage, Collection<String> ids) {
+        for (String id : ids) {
+            delete(storage, id);
+        }
+    }
+
+    // Несколько update() одной сущности применяются по очереди; удалённую или отсутствующую сущность не трогает
+    public <T> void update(JsonStorageService<T> storage, String id, UnaryOperator<T> updater) {
+        StagedChanges<T> staged = changesFor(storage);
+        if (!staged.deletes.contains(id)) {
+            staged.updates.merge(id, updater, (first, second) -> entity -> second.apply(first.apply(entity)));
+        }
+    }
+
+    /*
+    * Проверка, которая выполняется в commit() под блокировками всей транзакции, до update() и записи.
+    * id берётся под блокировку вместе с остальными; чтобы отменить транзакцию, check бросает исключение -
+    * оно вылетит из commit(), и ничего не будет записано.
+    * */
+    public void verify(JsonStorageService<?> storage, String id, Runnable check) {
+        StagedChanges<?> staged = changesFor(storage);
+        staged.checkedIds.add(id);
+        staged.checks.add(check);
+    }
+
+    public void commit() {
+        if (committed) {
+            throw new IllegalStateException("Transaction already committed");
+        }
+        committed = true;
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // Хранилищам в памяти после падения восстанавливать нечего: без CommitJournal (txId == null) они не трогают диск
+        boolean persistent = changes.keySet().stream().anyMatch(JsonStorageService::isPersistent);
+        String txId = persistent ? UUID.randomUUID().toString() : null;
+        List<StagedChanges<?>> ordered = new ArrayList<>(changes.values());
+        ordered.sort(Comparator.comparing(staged -> staged.storage.getStorageKey()));
+        lockAndApply(ordered, 0, txId);
+        if (txId != null) {
+            CommitJournal.shared().committed(txId);
+        }
+    }
+
+    /*
+    * Рекурсивно берёт блокировки хранилищ (по ключу хранилища - общий порядок для всех транзакций), затем под всеми сразу
+    * применяет update(), проверяет и сериализует изменения (уже с новыми версиями), пишет транзакцию в CommitJournal
+    * и меняет хранилища. События рассылаются после снятия блокировок.
+    * */
+    private void lockAndApply(List<StagedChanges<?>> staged, int next, String txId) {
+        if (next < staged.size()) {
+            StagedChanges<?> current = staged.get(next);
+            current.storage.withLocks(current.lockedIds(), () -> {
+                lockAndApply(staged, next + 1, txId);
+                return null;
+            });
+            if (next == 0) {
+                staged.forEach(StagedChanges::fireEvents);
+            }
+            return;
+        }
+        applyExclusively(staged, 0, txId);
+    }
+
+    /*
+    * Под полосами берёт exclusive() всех хранилищ в том же порядке: пока они взяты, другие экземпляры не пишут,
+    * поэтому проверенные версии не устареют до записи. Изменения пишутся сразу, мимо group commit - транзакция
+    * либо ложится на диск во всех хранилищах, либо (при сбое записи) остаётся в CommitJournal и доигрывается.
+    * */
+    private void applyExclusively(List<StagedChanges<?>> staged, int next, String txId) {
+        if (next < staged.size()) {
+            staged.get(next).storage.exclusive(() -> {
+                applyExclusively(staged, next + 1, txId);
+                return null;
+            });
+            return;
+        }
+        try {
+            for (StagedChanges<?> changes : staged) {
+                changes.resolveUpdates();
+                changes.prepare();
+            }
+            if (txId != null) {
+                JsonObject changesByStorage = new JsonObject();
+                for (StagedChanges<?> changes : staged) {
+                    changesByStorage.add(changes.storage.getStorageKey(), changes.prepared.records());
+                }
+                CommitJournal.shared().begin(txId, changesByStorage);
+            }
+        } catch (RuntimeException e) {
+            staged.forEach(StagedChanges::discard);
+            throw e;
+        }
+
+        for (StagedChanges<?> changes : staged) {
+            changes.apply();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> StagedChanges<T> changesFor(JsonStorageService<T> storage) {
+        if (committed) {
+            throw new IllegalStateException("Transaction already committed");
+        }
+        return (StagedChanges<T>) changes.computeIfAbsent(storage, key -> new StagedChanges<>(storage));
+    }
+
+    private static class StagedChanges<T> {
+        final JsonStorageService<T> storage;
+        final Map<String, T> puts = new LinkedHashMap<>();
+        final Set<String> deletes = new LinkedHashSet<>();
+        final Map<String, UnaryOperator<T>> updates = new LinkedHashMap<>();
+        final Set<String> checkedIds = new HashSet<>();
+        final List<Runnable> checks = new ArrayList<>();
+        final Map<String, JsonElement> originals = new HashMap<>(); // Вид сущностей до update(), для отката
+        JsonStorageService.PreparedBatch<T> prepared;
+        List<StorageEvent<T>> events = List.of();
+
+        StagedChanges(JsonStorageService<T> storage) {
+            this.storage = storage;
+        }
+
+        Set<String> lockedIds() {
+            Set<String> ids = new HashSet<>(puts.keySet());
+            ids.addAll(deletes);
+            ids.addAll(updates.keySet());
+            ids.addAll(checkedIds);
+            return ids;
+        }
+
+        void resolveUpdates() {
+            storage.syncWithDisk();
+            checks.forEach(Runnable::run);
+            updates.forEach((id, updater) -> {
+                T current = puts.containsKey(id) ? puts.get(id) : storage.getById(id);
+                if (current != null) {
+                    if (!puts.containsKey(id)) {
+                        originals.put(id, storage.gson.toJsonTree(current));
+                    }
+                    puts.put(id, updater.apply(current));
+                }
+            });
+            updates.clear();
+        }
+
+        void prepare() {
+            prepared = storage.prepareBatch(puts, deletes);
+        }
+
+        void discard() {
+            if (prepared != null) {
+                storage.discardPrepared(prepared);
+            }
+            originals.forEach(storage::restore);
+        }
+
+        void apply() {
+            events = storage.applyPrepared(prepared, true);
+        }
+
+        // Сначала то, что бэкенд накопил под блокировкой записи (чужие изменения), потом свои
+        void fireEvents() {
+            storage.fireDeferred();
+            events.forEach(storage::fire);
+        }
+    }
+}
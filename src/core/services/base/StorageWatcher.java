@@ -0,0 +1,93 @@
+package core.services.base;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Один daemon-поток на все хранилища с опцией watched(): ждёт событий WatchService по папкам хранилищ
+ * и передаёт имена изменившихся файлов файловому бэкенду хранилища. На сетевых томах события от другой машины приходят
+ * не всегда, поэтому без событий хранилища раз в POLL_SECONDS сами сверяют свои файлы.
+ * */
+final class StorageWatcher {
+    private static final long POLL_SECONDS = 2;
+    private static final long DEBOUNCE_MILLIS = 100; // Запись шардов идёт пачкой, ждём её конца
+    private static StorageWatcher instance;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, List<JsonFileStorageBackend<?>>> storagesByKey = new ConcurrentHashMap<>();
+    private final List<JsonFileStorageBackend<?>> storages = new CopyOnWriteArrayList<>();
+
+    private StorageWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(this::run, "storage-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static synchronized StorageWatcher shared() {
+        if (instance == null) {
+            try {
+                instance = new StorageWatcher();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to start storage watcher: " + e.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    void register(JsonFileStorageBackend<?> storage, Path folder) {
+        try {
+            WatchKey key = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            storagesByKey.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(storage);
+        } catch (IOException e) {
+            // Без событий хранилище всё равно увидит изменения через периодическую сверку
+            System.err.println("Failed to watch " + folder + ": " + e.getMessage());
+        }
+        storages.add(storage);
+    }
+
+    void unregister(JsonFileStorageBackend<?> storage) {
+        storages.remove(storage);
+        storagesByKey.values().forEach(registered -> registered.remove(storage));
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                WatchKey key = watchService.poll(POLL_SECONDS, TimeUnit.SECONDS);
+                if (key == null) {
+                    storages.forEach(JsonFileStorageBackend::pollForChanges);
+                    continue;
+                }
+                Thread.sleep(DEBOUNCE_MILLIS);
+                Map<JsonFileStorageBackend<?>, Set<String>> changes = new LinkedHashMap<>();
+                for (; key != null; key = watchService.poll()) {
+                    collect(key, changes);
+                }
+                changes.forEach(JsonFileStorageBackend::onFilesChanged);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Storage watcher failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void collect(WatchKey key, Map<JsonFileStorageBackend<?>, Set<String>> changes) {
+        Set<String> fileNames = new HashSet<>();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path path) {
+                fileNames.add(path.getFileName().toString());
+            }
+        }
+        key.reset();
+        for (JsonFileStorageBackend<?> storage : storagesByKey.getOrDefault(key, List.of())) {
+            changes.computeIfAbsent(storage, s -> new HashSet<>()).addAll(fileNames);
+        }
+    }
+}
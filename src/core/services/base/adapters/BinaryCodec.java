@@ -0,0 +1,12 @@
+package core.services.base.adapters;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Бинарное представление модели для SnapshotFormat.BINARY
+public interface BinaryCodec<T> {
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,123 @@
+package core.services.base.adapters;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*
+ * Кодирование полей в бинарном снапшоте.
+ * id: тег 0 - null, 1 - UUID двумя long, 2 - произвольная строка (не UUID).
+ * Даты - int epoch day, NULL_DATE для null. Списки - int длина (-1 для null).
+ * */
+public final class BinaryFields {
+    private static final byte ID_NULL = 0;
+    private static final byte ID_UUID = 1;
+    private static final byte ID_STRING = 2;
+    private static final int NULL_DATE = Integer.MIN_VALUE;
+
+    private BinaryFields() {
+    }
+
+    public static void writeId(DataOutput out, String id) throws IOException {
+        if (id == null) {
+            out.writeByte(ID_NULL);
+            return;
+        }
+        UUID uuid = parseCanonicalUuid(id);
+        if (uuid != null) {
+            out.writeByte(ID_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(ID_STRING);
+            out.writeUTF(id);
+        }
+    }
+
+    public static String readId(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case ID_NULL -> null;
+            case ID_UUID -> new UUID(in.readLong(), in.readLong()).toString();
+            case ID_STRING -> in.readUTF();
+            default -> throw new IOException("Unknown id tag " + tag);
+        };
+    }
+
+    // Only ids that survive a round trip go as two longs, so upper-case or short forms keep their text
+    private static UUID parseCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        out.writeInt(date == null ? NULL_DATE : Math.toIntExact(date.toEpochDay()));
+    }
+
+    public static LocalDate readDate(DataInput in) throws IOException {
+        int epochDay = in.readInt();
+        return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    public static void writeIdList(DataOutput out, List<String> ids) throws IOException {
+        if (ids == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            writeId(out, id);
+        }
+    }
+
+    public static List<String> readIdList(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<String> ids = new ArrayList<>(Math.max(size, 0));
+        for (int i = 0; i < size; i++) {
+            ids.add(readId(in));
+        }
+        return ids;
+    }
+
+    public static void writeDateList(DataOutput out, List<LocalDate> dates) throws IOException {
+        if (dates == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(dates.size());
+        for (LocalDate date : dates) {
+            writeDate(out, date);
+        }
+    }
+
+    public static List<LocalDate> readDateList(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<LocalDate> dates = new ArrayList<>(Math.max(size, 0));
+        for (int i = 0; i < size; i++) {
+            dates.add(readDate(in));
+        }
+        return dates;
+    }
+}
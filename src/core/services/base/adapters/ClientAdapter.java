@@ -0,0 +1,58 @@
+package core.services.base.adapters;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import core.models.actors.Client;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class ClientAdapter extends ModelTypeAdapter<Client> {
+    @Override
+    public void write(JsonWriter out, Client client) throws IOException {
+        out.beginObject();
+        writeString(out, "id", client.getId());
+        writeString(out, "name", client.getName());
+        writeString(out, "passportId", client.getPassportId());
+        writeStringList(out, "subscriptionIds", client.getSubscriptionIds());
+        writeVersion(out, client);
+        out.endObject();
+    }
+
+    @Override
+    public Client read(JsonReader in) throws IOException {
+        Client client = new Client();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> client.setId(readString(in));
+                case "name" -> client.setName(readString(in));
+                case "passportId" -> client.setPassportId(readString(in));
+                case "subscriptionIds" -> client.setSubscriptionIds(readStringList(in));
+                case "version" -> client.setVersion(in.nextLong());
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return client;
+    }
+
+    @Override
+    public void write(DataOutput out, Client client) throws IOException {
+        BinaryFields.writeId(out, client.getId());
+        BinaryFields.writeString(out, client.getName());
+        BinaryFields.writeId(out, client.getPassportId());
+        BinaryFields.writeIdList(out, client.getSubscriptionIds());
+    }
+
+    @Override
+    public Client read(DataInput in) throws IOException {
+        Client client = new Client();
+        client.setId(BinaryFields.readId(in));
+        client.setName(BinaryFields.readString(in));
+        client.setPassportId(BinaryFields.readId(in));
+        client.setSubscriptionIds(BinaryFields.readIdList(in));
+        return client;
+    }
+}
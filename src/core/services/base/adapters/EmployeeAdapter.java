@@ -0,0 +1,54 @@
+package core.services.base.adapters;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import core.models.base.Employee;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Общие поля Employee для TrainerAdapter и ManagerAdapter
+abstract class EmployeeAdapter<T extends Employee> extends ModelTypeAdapter<T> {
+
+    static void writeEmployeeFields(JsonWriter out, Employee employee) throws IOException {
+        writeString(out, "id", employee.getId());
+        writeString(out, "name", employee.getName());
+        writeString(out, "password", employee.getPassword());
+        writeString(out, "passportId", employee.getPassportId());
+        writeString(out, "phone", employee.getPhone());
+        writeVersion(out, employee);
+    }
+
+    // Returns false when the field is not an Employee field
+    static boolean readEmployeeField(JsonReader in, String name, Employee employee) throws IOException {
+        switch (name) {
+            case "id" -> employee.setId(readString(in));
+            case "name" -> employee.setName(readString(in));
+            case "password" -> employee.setPassword(readString(in));
+            case "passportId" -> employee.setPassportId(readString(in));
+            case "phone" -> employee.setPhone(readString(in));
+            case "version" -> employee.setVersion(in.nextLong());
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeEmployeeFields(DataOutput out, Employee employee) throws IOException {
+        BinaryFields.writeId(out, employee.getId());
+        BinaryFields.writeString(out, employee.getName());
+        BinaryFields.writeString(out, employee.getPassword());
+        BinaryFields.writeId(out, employee.getPassportId());
+        BinaryFields.writeString(out, employee.getPhone());
+    }
+
+    static void readEmployeeFields(DataInput in, Employee employee) throws IOException {
+        employee.setId(BinaryFields.readId(in));
+        employee.setName(BinaryFields.readString(in));
+        employee.setPassword(BinaryFields.readString(in));
+        employee.setPassportId(BinaryFields.readId(in));
+        employee.setPhone(BinaryFields.readString(in));
+    }
+}
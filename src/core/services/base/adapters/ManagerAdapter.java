@@ -0,0 +1,43 @@
+package core.services.base.adapters;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import core.models.actors.Manager;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class ManagerAdapter extends EmployeeAdapter<Manager> {
+    @Override
+    public void write(JsonWriter out, Manager manager) throws IOException {
+        out.beginObject();
+        writeEmployeeFields(out, manager);
+        out.endObject();
+    }
+
+    @Override
+    public Manager read(JsonReader in) throws IOException {
+        Manager manager = new Manager();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!readEmployeeField(in, in.nextName(), manager)) {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return manager;
+    }
+
+    @Override
+    public void write(DataOutput out, Manager manager) throws IOException {
+        writeEmployeeFields(out, manager);
+    }
+
+    @Override
+    public Manager read(DataInput in) throws IOException {
+        Manager manager = new Manager();
+        readEmployeeFields(in, manager);
+        return manager;
+    }
+}
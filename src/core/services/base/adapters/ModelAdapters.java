@@ -0,0 +1,49 @@
+package core.services.base.adapters;
+
+import com.google.gson.GsonBuilder;
+import core.models.Passport;
+import core.models.Subscription;
+import core.models.actors.Client;
+import core.models.actors.Manager;
+import core.models.actors.Trainer;
+import core.models.base.TrainingClass;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+// Регистрирует адаптеры всех моделей, чтобы Gson не ходил в рефлексию
+public final class ModelAdapters {
+    private static final Map<Class<?>, ModelTypeAdapter<?>> ADAPTERS = Map.of(
+            Client.class, new ClientAdapter(),
+            Manager.class, new ManagerAdapter(),
+            Trainer.class, new TrainerAdapter(),
+            Passport.class, new PassportAdapter(),
+            Subscription.class, new SubscriptionAdapter(),
+            TrainingClass.class, new TrainingClassAdapter()
+    );
+
+    private ModelAdapters() {
+    }
+
+    public static GsonBuilder registerAll(GsonBuilder builder) {
+        builder.registerTypeAdapter(LocalDate.class, new LocalDateAdapter().nullSafe());
+        ADAPTERS.forEach((type, adapter) -> builder.registerTypeAdapter(type, adapter.nullSafe()));
+        return builder;
+    }
+
+    public static Class<?> modelType(String simpleName) {
+        return ADAPTERS.keySet().stream()
+                .filter(type -> type.getSimpleName().equals(simpleName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown model: " + simpleName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> BinaryCodec<T> binaryCodec(Class<T> type) {
+        BinaryCodec<T> codec = (BinaryCodec<T>) ADAPTERS.get(type);
+        if (codec == null) {
+            throw new IllegalArgumentException("No binary codec for " + type.getSimpleName());
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,77 @@
+package core.services.base.adapters;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import core.models.base.Versioned;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * База для адаптеров моделей без рефлексии. Формат совпадает с тем, что писал
+ * рефлективный Gson: те же имена полей, null-поля не пишутся, неизвестные поля пропускаются.
+ * Каждый адаптер заодно умеет бинарный формат (BinaryCodec).
+ * */
+abstract class ModelTypeAdapter<T> extends TypeAdapter<T> implements BinaryCodec<T> {
+
+    static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    static void writeDate(JsonWriter out, String name, LocalDate value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value.toString());
+        }
+    }
+
+    // version пишется только у сущностей, которые уже сохранялись, поэтому старые файлы не меняются
+    static void writeVersion(JsonWriter out, Versioned entity) throws IOException {
+        if (entity.getVersion() != 0) {
+            out.name("version").value(entity.getVersion());
+        }
+    }
+
+    static void writeStringList(JsonWriter out, String name, List<String> values) throws IOException {
+        if (values == null) {
+            return;
+        }
+        out.name(name).beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    static LocalDate readDate(JsonReader in) throws IOException {
+        String value = readString(in);
+        return value == null ? null : LocalDate.parse(value);
+    }
+
+    static List<String> readStringList(JsonReader in) throws IOException {
+        List<String> values = new ArrayList<>();
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return values;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(readString(in));
+        }
+        in.endArray();
+        return values;
+    }
+}
@@ -0,0 +1,66 @@
+package core.services.base.adapters;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import core.models.Passport;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class PassportAdapter extends ModelTypeAdapter<Passport> {
+    @Override
+    public void write(JsonWriter out, Passport passport) throws IOException {
+        out.beginObject();
+        writeString(out, "id", passport.getId());
+        writeString(out, "address", passport.getAddress());
+        writeDate(out, "birthDate", passport.getBirthDate());
+        writeString(out, "number", passport.getNumber());
+        writeString(out, "series", passport.getSeries());
+        writeDate(out, "overdue", passport.getOverdue());
+        writeVersion(out, passport);
+        out.endObject();
+    }
+
+    @Override
+    public Passport read(JsonReader in) throws IOException {
+        Passport passport = new Passport();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> passport.setId(readString(in));
+                case "address" -> passport.setAddress(readString(in));
+                case "birthDate" -> passport.setBirthDate(readDate(in));
+                case "number" -> passport.setNumber(readString(in));
+                case "series" -> passport.setSeries(readString(in));
+                case "overdue" -> passport.setOverdue(readDate(in));
+                case "version" -> passport.setVersion(in.nextLong());
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return passport;
+    }
+
+    @Override
+    public void write(DataOutput out, Passport passport) throws IOException {
+        BinaryFields.writeId(out, passport.getId());
+        BinaryFields.writeString(out, passport.getAddress());
+        BinaryFields.writeDate(out, passport.getBirthDate());
+        BinaryFields.writeString(out, passport.getNumber());
+        BinaryFields.writeString(out, passport.getSeries());
+        BinaryFields.writeDate(out, passport.getOverdue());
+    }
+
+    @Override
+    public Passport read(DataInput in) throws IOException {
+        Passport passport = new Passport();
+        passport.setId(BinaryFields.readId(in));
+        passport.setAddress(BinaryFields.readString(in));
+        passport.setBirthDate(BinaryFields.readDate(in));
+        passport.setNumber(BinaryFields.readString(in));
+        passport.setSeries(BinaryFields.readString(in));
+        passport.setOverdue(BinaryFields.readDate(in));
+        return passport;
+    }
+}
@@ -0,0 +1,102 @@
+package core.services.base.adapters;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import core.models.Subscription;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * attendanceDates пишутся компактно - числами epoch day вместо строк "YYYY-MM-DD".
+ * При чтении принимаются оба варианта, поэтому старые файлы читаются без миграции.
+ * */
+public class SubscriptionAdapter extends ModelTypeAdapter<Subscription> {
+    @Override
+    public void write(JsonWriter out, Subscription subscription) throws IOException {
+        out.beginObject();
+        writeString(out, "id", subscription.getId());
+        writeString(out, "clientId", subscription.getClientId());
+        writeString(out, "trainingClassId", subscription.getTrainingClassId());
+        writeDate(out, "startDate", subscription.getStartDate());
+        writeDate(out, "endDate", subscription.getEndDate());
+        out.name("isPaid").value(subscription.isPaid());
+        if (subscription.getAttendanceDates() != null) {
+            out.name("attendanceDates").beginArray();
+            for (LocalDate date : subscription.getAttendanceDates()) {
+                out.value(date.toEpochDay());
+            }
+            out.endArray();
+        }
+        writeVersion(out, subscription);
+        out.endObject();
+    }
+
+    @Override
+    public Subscription read(JsonReader in) throws IOException {
+        Subscription subscription = new Subscription();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> subscription.setId(readString(in));
+                case "clientId" -> subscription.setClientId(readString(in));
+                case "trainingClassId" -> subscription.setTrainingClassId(readString(in));
+                case "startDate" -> subscription.setStartDate(readDate(in));
+                case "endDate" -> subscription.setEndDate(readDate(in));
+                case "isPaid" -> subscription.setPaid(in.nextBoolean());
+                case "attendanceDates" -> subscription.setAttendanceDates(readAttendanceDates(in));
+                case "version" -> subscription.setVersion(in.nextLong());
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return subscription;
+    }
+
+    private static List<LocalDate> readAttendanceDates(JsonReader in) throws IOException {
+        List<LocalDate> dates = new ArrayList<>();
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return dates;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NUMBER) {
+                dates.add(LocalDate.ofEpochDay(in.nextLong()));
+            } else {
+                dates.add(LocalDate.parse(in.nextString()));
+            }
+        }
+        in.endArray();
+        return dates;
+    }
+
+    @Override
+    public void write(DataOutput out, Subscription subscription) throws IOException {
+        BinaryFields.writeId(out, subscription.getId());
+        BinaryFields.writeId(out, subscription.getClientId());
+        BinaryFields.writeId(out, subscription.getTrainingClassId());
+        BinaryFields.writeDate(out, subscription.getStartDate());
+        BinaryFields.writeDate(out, subscription.getEndDate());
+        out.writeBoolean(subscription.isPaid());
+        BinaryFields.writeDateList(out, subscription.getAttendanceDates());
+    }
+
+    @Override
+    public Subscription read(DataInput in) throws IOException {
+        Subscription subscription = new Subscription();
+        subscription.setId(BinaryFields.readId(in));
+        subscription.setClientId(BinaryFields.readId(in));
+        subscription.setTrainingClassId(BinaryFields.readId(in));
+        subscription.setStartDate(BinaryFields.readDate(in));
+        subscription.setEndDate(BinaryFields.readDate(in));
+        subscription.setPaid(in.readBoolean());
+        subscription.setAttendanceDates(BinaryFields.readDateList(in));
+        return subscription;
+    }
+}
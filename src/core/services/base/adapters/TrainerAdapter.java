@@ -0,0 +1,49 @@
+package core.services.base.adapters;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import core.models.actors.Trainer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class TrainerAdapter extends EmployeeAdapter<Trainer> {
+    @Override
+    public void write(JsonWriter out, Trainer trainer) throws IOException {
+        out.beginObject();
+        writeStringList(out, "trainingClassIds", trainer.getTrainingClassIds());
+        writeEmployeeFields(out, trainer);
+        out.endObject();
+    }
+
+    @Override
+    public Trainer read(JsonReader in) throws IOException {
+        Trainer trainer = new Trainer();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("trainingClassIds")) {
+                trainer.setTrainingClassIds(readStringList(in));
+            } else if (!readEmployeeField(in, name, trainer)) {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return trainer;
+    }
+
+    @Override
+    public void write(DataOutput out, Trainer trainer) throws IOException {
+        BinaryFields.writeIdList(out, trainer.getTrainingClassIds());
+        writeEmployeeFields(out, trainer);
+    }
+
+    @Override
+    public Trainer read(DataInput in) throws IOException {
+        Trainer trainer = new Trainer();
+        trainer.setTrainingClassIds(BinaryFields.readIdList(in));
+        readEmployeeFields(in, trainer);
+        return trainer;
+    }
+}
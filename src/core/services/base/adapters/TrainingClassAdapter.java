@@ -0,0 +1,73 @@
+package core.services.base.adapters;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import core.models.base.TrainingClass;
+import core.models.enums.TrainingLevel;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class TrainingClassAdapter extends ModelTypeAdapter<TrainingClass> {
+    @Override
+    public void write(JsonWriter out, TrainingClass trainingClass) throws IOException {
+        out.beginObject();
+        writeString(out, "id", trainingClass.getId());
+        writeString(out, "danceType", trainingClass.getDanceType());
+        if (trainingClass.getLevel() != null) {
+            out.name("level").value(trainingClass.getLevel().name());
+        }
+        writeString(out, "trainerId", trainingClass.getTrainerId());
+        writeString(out, "clientId", trainingClass.getClientId());
+        writeString(out, "schedule", trainingClass.getSchedule());
+        writeVersion(out, trainingClass);
+        out.endObject();
+    }
+
+    @Override
+    public TrainingClass read(JsonReader in) throws IOException {
+        TrainingClass trainingClass = new TrainingClass();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> trainingClass.setId(readString(in));
+                case "danceType" -> trainingClass.setDanceType(readString(in));
+                case "level" -> {
+                    String level = readString(in);
+                    trainingClass.setLevel(level == null ? null : TrainingLevel.valueOf(level));
+                }
+                case "trainerId" -> trainingClass.setTrainerId(readString(in));
+                case "clientId" -> trainingClass.setClientId(readString(in));
+                case "schedule" -> trainingClass.setSchedule(readString(in));
+                case "version" -> trainingClass.setVersion(in.nextLong());
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return trainingClass;
+    }
+
+    @Override
+    public void write(DataOutput out, TrainingClass trainingClass) throws IOException {
+        BinaryFields.writeId(out, trainingClass.getId());
+        BinaryFields.writeString(out, trainingClass.getDanceType());
+        out.writeByte(trainingClass.getLevel() == null ? -1 : trainingClass.getLevel().ordinal());
+        BinaryFields.writeId(out, trainingClass.getTrainerId());
+        BinaryFields.writeId(out, trainingClass.getClientId());
+        BinaryFields.writeString(out, trainingClass.getSchedule());
+    }
+
+    @Override
+    public TrainingClass read(DataInput in) throws IOException {
+        TrainingClass trainingClass = new TrainingClass();
+        trainingClass.setId(BinaryFields.readId(in));
+        trainingClass.setDanceType(BinaryFields.readString(in));
+        byte level = in.readByte();
+        trainingClass.setLevel(level < 0 ? null : TrainingLevel.values()[level]);
+        trainingClass.setTrainerId(BinaryFields.readId(in));
+        trainingClass.setClientId(BinaryFields.readId(in));
+        trainingClass.setSchedule(BinaryFields.readString(in));
+        return trainingClass;
+    }
+}
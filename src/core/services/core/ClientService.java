@@ -2,37 +2,52 @@ package core.services.core;
 
 import core.models.Subscription;
 import core.models.actors.Client;
-import core.models.actors.Trainer;
 import core.models.base.TrainingClass;
 import core.services.storage.ClientStorageService;
 import core.services.storage.SubscriptionStorageService;
 
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.stream.Stream;
 
 public class ClientService {
     private final ClientStorageService clientStorage;
     private final SubscriptionStorageService subscriptionStorage;
     private final TrainingClassService trainingClassService;
-    private final TrainerService trainerService;
     private final PassportService passportService;
+    private final OwnerLink<Subscription, Client> clientLink;
 
     public ClientService(
             ClientStorageService clientStorage,
             SubscriptionStorageService subscriptionStorage,
-            TrainingClassService trainingClassService, TrainerService trainerService, PassportService passportService) {
+            TrainingClassService trainingClassService, PassportService passportService) {
         this.clientStorage = clientStorage;
         this.subscriptionStorage = subscriptionStorage;
         this.trainingClassService = trainingClassService;
-        this.trainerService = trainerService;
         this.passportService = passportService;
+        this.clientLink = SubscriptionService.clientLink(subscriptionStorage, clientStorage);
     }
 
     // Methods for Clients to view their data
+    /*
+     * Goes through the client's own subscriptionIds, so the cost depends on this client only, not on the club size.
+     * The write paths keep the list in step with the subscription store; a read never changes it,
+     * it just skips ids that no longer point back at this client.
+     * */
     public List<Subscription> getClientSubscriptions(String clientId) {
-        return subscriptionStorage.getAll().stream()
-                .filter(sub -> sub.getClientId().equals(clientId))
-                .toList();
+        Client client = clientStorage.getById(clientId);
+        if (client == null || client.getSubscriptionIds() == null) {
+            return List.of();
+        }
+        List<String> subscriptionIds = List.copyOf(client.getSubscriptionIds());
+        List<Subscription> subscriptions = new ArrayList<>(subscriptionIds.size());
+        Set<String> seen = new HashSet<>();
+        for (String subscriptionId : subscriptionIds) {
+            Subscription subscription = subscriptionStorage.getById(subscriptionId);
+            if (subscription != null && clientId.equals(subscription.getClientId()) && seen.add(subscriptionId)) {
+                subscriptions.add(subscription);
+            }
+        }
+        return subscriptions;
     }
 
     public List<TrainingClass> getClientClasses(String clientId) {
@@ -40,10 +55,7 @@ public class ClientService {
                 .map(Subscription::getTrainingClassId)
                 .toList();
 
-        return classIds.stream()
-                .map(trainingClassService::getTrainingClass)
-                .filter(Objects::nonNull)
-                .toList();
+        return List.copyOf(trainingClassService.getTrainingClasses(classIds).values());
     }
 
     // Methods for Managers to manage clients
@@ -58,33 +70,36 @@ public class ClientService {
     }
 
     public void deleteClient(Client client) {
-        List<Subscription> subscriptions = getClientSubscriptions(client.getId());
-        List<TrainingClass> classes = getClientClasses(client.getId());
-
-        for (TrainingClass trainingClass : classes) {
-            // Remove class from trainer's list
-            Trainer trainer = trainerService.getTrainerById(trainingClass.getTrainerId());
-            if (trainer != null) {
-                trainer.removeTrainingClass(trainingClass.getId());
-                trainerService.updateTrainer(trainer);
-            }
-            trainingClassService.deleteTrainingClass(trainingClass);
-        }
+        OwnerLink.commit(transaction -> {
+            // The cascade goes by the clientId index, so it also catches subscriptions missing from the client's list
+            List<Subscription> subscriptions = clientLink.expectOwned(transaction, client.getId(), Subscription::getId);
+            Collection<TrainingClass> classes = trainingClassService.getTrainingClasses(
+                    subscriptions.stream().map(Subscription::getTrainingClassId).toList()).values();
 
-        for (Subscription subscription : subscriptions) {
-            subscriptionStorage.delete(subscription.getId());
-        }
+            // Also removes the classes from their trainers' lists
+            trainingClassService.deleteTrainingClasses(classes, transaction);
+
+            transaction.deleteAll(subscriptionStorage, subscriptions.stream().map(Subscription::getId).toList());
 
-        passportService.deletePassport(passportService.getPassportById(client.getPassportId()));
+            passportService.deletePassport(passportService.getPassportById(client.getPassportId()), transaction);
 
-        clientStorage.delete(client.getId());
+            transaction.delete(clientStorage, client.getId());
+        });
     }
 
     public List<Client> getAllClients() {
         return clientStorage.getAll();
     }
 
+    public Stream<Client> streamClients() {
+        return clientStorage.stream();
+    }
+
     public Client getClientById(String clientId) {
         return clientStorage.getById(clientId);
     }
+
+    public Map<String, Client> getClientsByIds(Collection<String> clientIds) {
+        return clientStorage.getByIds(clientIds);
+    }
 }
\ No newline at end of file
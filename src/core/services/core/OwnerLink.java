@@ -0,0 +1,150 @@
+package core.services.core;
+
+import core.services.base.JsonStorageService;
+import core.services.base.StorageTransaction;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/*
+ * Link between an entity and the owner that keeps a list of its ids (subscription -> client, class -> trainer).
+ * Only the index knows an entity's current owner (the entity may have been changed in place), while the
+ * transaction takes the owners' locks before commit(). So the owner is read from the index up front and
+ * checked again with StorageTransaction.verify(), under the lock of the entity itself; if it was
+ * reassigned in the meantime, the transaction is rolled back and built again by commit().
+ * */
+final class OwnerLink<T, O> {
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final JsonStorageService<T> storage;
+    private final String ownerIndex;
+    private final Function<T, String> ownerOf;
+    private final JsonStorageService<O> ownerStorage;
+    private final BiConsumer<O, String> removeId;
+    private final BiConsumer<O, String> addId;
+
+    OwnerLink(
+            JsonStorageService<T> storage,
+            String ownerIndex,
+            Function<T, String> ownerOf,
+            JsonStorageService<O> ownerStorage,
+            BiConsumer<O, String> removeId,
+            BiConsumer<O, String> addId) {
+        this.storage = storage;
+        this.ownerIndex = ownerIndex;
+        this.ownerOf = ownerOf;
+        this.ownerStorage = ownerStorage;
+        this.removeId = removeId;
+        this.addId = addId;
+    }
+
+    // Builds and commits a transaction, building it again while an owner check keeps failing
+    static void commit(Consumer<StorageTransaction> build) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            StorageTransaction transaction = new StorageTransaction();
+            build.accept(transaction);
+            try {
+                transaction.commit();
+                return;
+            } catch (OwnerChangedException e) {
+                // A concurrent write changed an owner; the next attempt reads the new one
+            }
+        }
+        throw new IllegalStateException("Owners keep changing, giving up after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    // The entity must still exist when the transaction is applied, e.g. a new owner the entity will point at
+    static void expectExists(StorageTransaction transaction, JsonStorageService<?> storage, String id, String message) {
+        transaction.verify(storage, id, () -> {
+            if (storage.getById(id) == null) {
+                throw new IllegalArgumentException(message);
+            }
+        });
+    }
+
+    // Current owner of id by the index, checked again on commit; only for transactions built inside commit()
+    String expectOwner(StorageTransaction transaction, String id) {
+        String ownerId = storage.indexedKey(ownerIndex, id);
+        transaction.verify(storage, id, () -> {
+            if (!Objects.equals(storage.indexedKey(ownerIndex, id), ownerId)) {
+                throw new OwnerChangedException();
+            }
+        });
+        return ownerId;
+    }
+
+    // Entities the owner has by the index, checked again on commit, so none is moved to or from the owner meanwhile
+    List<T> expectOwned(StorageTransaction transaction, String ownerId, Function<T, String> idOf) {
+        List<T> owned = storage.findBy(ownerIndex, ownerId);
+        Set<String> ownedIds = owned.stream().map(idOf).collect(Collectors.toSet());
+        // Every move to or from the owner updates its list, so under the owner's lock the index is settled
+        transaction.verify(ownerStorage, ownerId, () -> {
+            Set<String> current = storage.findBy(ownerIndex, ownerId).stream().map(idOf).collect(Collectors.toSet());
+            if (!current.equals(ownedIds)) {
+                throw new OwnerChangedException();
+            }
+        });
+        return owned;
+    }
+
+    // Takes id off its owner's list in a cascade built inside commit()
+    void detach(StorageTransaction transaction, String id) {
+        String ownerId = expectOwner(transaction, id);
+        if (ownerId != null) {
+            transaction.update(ownerStorage, ownerId, owner -> {
+                removeId.accept(owner, id);
+                return owner;
+            });
+        }
+    }
+
+    /*
+     * Changes the entity and moves its id from the current owner's list to the new owner's.
+     * newOwnerId is read again on every attempt: the change may hand over an instance that is edited in place.
+     * */
+    void update(String id, Supplier<String> newOwnerId, UnaryOperator<T> change) {
+        commit(transaction -> {
+            String previousOwnerId = expectOwner(transaction, id);
+            String ownerId = newOwnerId.get();
+            // update() skips a deleted entity, but the owners' lists would still change
+            expectExists(transaction, storage, id, id + " not found");
+            transaction.update(storage, id, entity -> {
+                T changed = change.apply(entity);
+                if (!Objects.equals(ownerOf.apply(changed), ownerId)) {
+                    throw new OwnerChangedException();
+                }
+                return changed;
+            });
+            if (!Objects.equals(previousOwnerId, ownerId)) {
+                if (previousOwnerId != null) {
+                    transaction.update(ownerStorage, previousOwnerId, owner -> {
+                        removeId.accept(owner, id);
+                        return owner;
+                    });
+                }
+                if (ownerId != null) {
+                    expectExists(transaction, ownerStorage, ownerId, "Owner " + ownerId + " not found");
+                    transaction.update(ownerStorage, ownerId, owner -> {
+                        addId.accept(owner, id);
+                        return owner;
+                    });
+                }
+            }
+        });
+    }
+
+    private static final class OwnerChangedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        OwnerChangedException() {
+            super(null, null, false, false);
+        }
+    }
+}
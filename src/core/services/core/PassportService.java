@@ -1,9 +1,12 @@
 package core.services.core;
 
 import core.models.Passport;
+import core.services.base.StorageTransaction;
 import core.services.storage.PassportStorageService;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class PassportService {
     private final PassportStorageService passportStorageService;
@@ -23,11 +26,21 @@ public class PassportService {
         return passportStorageService.getAll();
     }
 
+    public Stream<Passport> streamPassports()
+    {
+        return passportStorageService.stream();
+    }
+
     public void deletePassport(Passport passport)
     {
         passportStorageService.delete(passport.getId());
     }
 
+    void deletePassport(Passport passport, StorageTransaction transaction)
+    {
+        transaction.delete(passportStorageService, passport.getId());
+    }
+
     public void updatePassport(Passport passport)
     {
         passportStorageService.save(passport);
@@ -38,4 +51,10 @@ public class PassportService {
         passportStorageService.save(passport);
     }
 
+    // Для импорта: все паспорта пишутся одной пачкой
+    public void createPassports(Collection<Passport> passports)
+    {
+        passportStorageService.saveAll(passports);
+    }
+
 }
@@ -2,6 +2,7 @@ package core.services.core;
 
 import core.models.Subscription;
 import core.models.actors.Client;
+import core.services.base.StorageTransaction;
 import core.services.storage.ClientStorageService;
 import core.services.storage.SubscriptionStorageService;
 
@@ -11,12 +12,22 @@ import java.util.List;
 public class SubscriptionService {
     private final SubscriptionStorageService subscriptionStorage;
     private final ClientStorageService clientStorage;
+    private final OwnerLink<Subscription, Client> clientLink;
 
     public SubscriptionService(
             SubscriptionStorageService subscriptionStorage,
             ClientStorageService clientStorage) {
         this.subscriptionStorage = subscriptionStorage;
         this.clientStorage = clientStorage;
+        this.clientLink = clientLink(subscriptionStorage, clientStorage);
+    }
+
+    // Subscription -> Client.subscriptionIds; ClientService uses the same link for its cascade
+    static OwnerLink<Subscription, Client> clientLink(
+            SubscriptionStorageService subscriptionStorage,
+            ClientStorageService clientStorage) {
+        return new OwnerLink<>(subscriptionStorage, SubscriptionStorageService.BY_CLIENT_ID, Subscription::getClientId,
+                clientStorage, Client::removeSubscription, Client::addSubscription);
     }
 
     public Subscription createSubscription(
@@ -26,32 +37,45 @@ public class SubscriptionService {
             LocalDate endDate,
             boolean isPaid) {
 
+        if (getSubscriptionByClientIdAndTrainingClassId(clientId, trainingClassId) != null) {
+            throw new IllegalArgumentException("Client already has a subscription to this class");
+        }
+
         Subscription subscription = new Subscription(clientId, trainingClassId, startDate, endDate, isPaid);
-        subscriptionStorage.save(subscription);
+        StorageTransaction transaction = new StorageTransaction();
+        transaction.save(subscriptionStorage, subscription);
+
+        // transaction.update() skips a missing client, which would leave the subscription without an owner
+        OwnerLink.expectExists(transaction, clientStorage, clientId, "Client not found");
 
         // Update client's subscription list
-        Client client = clientStorage.getById(clientId);
-        if (client != null) {
+        transaction.update(clientStorage, clientId, client -> {
             client.addSubscription(subscription.getId());
-            clientStorage.save(client);
-        }
+            return client;
+        });
 
+        transaction.commit();
         return subscription;
     }
 
+    // The subscription may have been moved to another client; its id moves between their lists in the same transaction
     public void updateSubscription(Subscription subscription) {
-        subscriptionStorage.save(subscription);
+        if (subscriptionStorage.getById(subscription.getId()) == null) {
+            throw new IllegalArgumentException("Subscription not found");
+        }
+        clientLink.update(subscription.getId(), subscription::getClientId, current -> subscription);
     }
 
     public void deleteSubscription(Subscription subscription) {
+        OwnerLink.commit(transaction -> deleteSubscription(subscription, transaction));
+    }
+
+    // For cascades: the transaction has to be built inside OwnerLink.commit()
+    void deleteSubscription(Subscription subscription, StorageTransaction transaction) {
         if (subscription != null) {
-            // Remove subscription from client's list
-            Client client = clientStorage.getById(subscription.getClientId());
-            if (client != null) {
-                client.getSubscriptionIds().remove(subscription.getId());
-                clientStorage.save(client);
-            }
-            subscriptionStorage.delete(subscription.getId());
+            // Remove subscription from its current client's list; the caller's copy may name an outdated one
+            clientLink.detach(transaction, subscription.getId());
+            transaction.delete(subscriptionStorage, subscription.getId());
         }
     }
 
@@ -60,9 +84,8 @@ public class SubscriptionService {
     }
 
     public Subscription getSubscriptionByClientIdAndTrainingClassId(String clientId, String trainingClassId){
-        return subscriptionStorage.getAll().stream()
-                .filter(subscription -> subscription.getClientId().equals(clientId) &&
-                        subscription.getTrainingClassId().equals(trainingClassId))
+        return subscriptionStorage.findBy(SubscriptionStorageService.BY_CLIENT_AND_TRAINING_CLASS,
+                        SubscriptionStorageService.clientAndTrainingClassKey(clientId, trainingClassId)).stream()
                 .findFirst()
                 .orElse(null);
     }
@@ -3,7 +3,10 @@ package core.services.core;
 import core.models.actors.Trainer;
 import core.models.base.TrainingClass;
 import core.services.storage.TrainerStorageService;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class TrainerService {
 
@@ -37,25 +40,34 @@ public class TrainerService {
             throw new IllegalArgumentException("Trainer not found");
         }
 
-        // Get all training classes for this trainer
-        List<TrainingClass> trainerClasses = trainingClassService.getTrainerClasses(trainerId);
+        // Trainer, classes, subscriptions and passport go away together or not at all
+        OwnerLink.commit(transaction -> {
+            // Get all training classes for this trainer by the trainerId index, pinned until commit
+            List<TrainingClass> trainerClasses = trainingClassService.getClassesOwnedBy(trainerId, transaction);
 
-        // Delete each training class (this will also handle subscriptions)
-        for (TrainingClass trainingClass : trainerClasses) {
-            trainingClassService.deleteTrainingClass(trainingClass);
-        }
+            // Delete the training classes (this will also handle subscriptions)
+            trainingClassService.deleteTrainingClasses(trainerClasses, transaction);
 
-        passportService.deletePassport(passportService.getPassportById(trainer.getPassportId()));
+            passportService.deletePassport(passportService.getPassportById(trainer.getPassportId()), transaction);
 
-        // Finally delete the trainer
-        trainerStorage.delete(trainerId);
+            // Finally delete the trainer
+            transaction.delete(trainerStorage, trainerId);
+        });
     }
 
     public List<Trainer> getAllTrainers() {
         return trainerStorage.getAll();
     }
 
+    public Stream<Trainer> streamTrainers() {
+        return trainerStorage.stream();
+    }
+
     public Trainer getTrainerById(String id) {
         return trainerStorage.getById(id);
     }
+
+    public Map<String, Trainer> getTrainersByIds(Collection<String> ids) {
+        return trainerStorage.getByIds(ids);
+    }
 }
\ No newline at end of file
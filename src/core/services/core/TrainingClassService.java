@@ -4,16 +4,21 @@ import core.models.Subscription;
 import core.models.actors.Trainer;
 import core.models.base.TrainingClass;
 import core.models.enums.TrainingLevel;
+import core.services.base.StorageTransaction;
 import core.services.storage.TrainerStorageService;
 import core.services.storage.TrainingClassStorageService;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class TrainingClassService {
     private final TrainingClassStorageService trainingClassStorageService;
     private final TrainerStorageService trainerStorage;
     private final SubscriptionService subscriptionService;
+    private final OwnerLink<TrainingClass, Trainer> trainerLink;
 
     public TrainingClassService(
             TrainerStorageService trainerStorage,
@@ -22,60 +27,102 @@ public class TrainingClassService {
         this.trainingClassStorageService = trainingClassStorageService;
         this.trainerStorage = trainerStorage;
         this.subscriptionService = subscriptionService;
+        this.trainerLink = new OwnerLink<>(trainingClassStorageService, TrainingClassStorageService.BY_TRAINER_ID,
+                TrainingClass::getTrainerId, trainerStorage, Trainer::removeTrainingClass, Trainer::addTrainingClass);
     }
 
     public TrainingClass getTrainingClass(String classId) {
         return trainingClassStorageService.getById(classId);
     }
 
+    public Map<String, TrainingClass> getTrainingClasses(Collection<String> classIds) {
+        return trainingClassStorageService.getByIds(classIds);
+    }
+
+    /*
+     * Goes through the trainer's own trainingClassIds, so the cost depends on this trainer only, not on the club size.
+     * The write paths keep the list in step with the class store; a read never changes it,
+     * it just skips ids that no longer point back at this trainer.
+     * */
     public List<TrainingClass> getTrainerClasses(String trainerId) {
-        return new ArrayList<>(trainingClassStorageService.getAll().stream()
-                .filter(training -> training.getTrainerId().equals(trainerId))
-                .toList());
+        Trainer trainer = trainerStorage.getById(trainerId);
+        if (trainer == null) {
+            return List.of();
+        }
+        Map<String, TrainingClass> classes = trainingClassStorageService.getByIds(List.copyOf(trainer.getTrainingClassIds()));
+        return classes.values().stream()
+                .filter(trainingClass -> trainerId.equals(trainingClass.getTrainerId()))
+                .toList();
     }
 
-    public List<TrainingClass> getAllClasses() {
+    // For cascades: the transaction has to be built inside OwnerLink.commit()
+    List<TrainingClass> getClassesOwnedBy(String trainerId, StorageTransaction transaction) {
+        return trainerLink.expectOwned(transaction, trainerId, TrainingClass::getId);
+    }
 
-        return new ArrayList<>(trainingClassStorageService.getAll());
+    public List<TrainingClass> getAllClasses() {
+        return trainingClassStorageService.getAll();
     }
 
     public TrainingClass createTraining(String danceType, TrainingLevel level, String trainerId, String clientId, String schedule) {
         TrainingClass training = new TrainingClass(danceType, level, trainerId, clientId, schedule);
-        trainingClassStorageService.save(training);
+        StorageTransaction transaction = new StorageTransaction();
+        transaction.save(trainingClassStorageService, training);
 
         // Update trainer's training list
-        Trainer trainer = trainerStorage.getById(trainerId);
-        if (trainer != null) {
-            trainer.addTrainingClass(training.getId());
-            trainerStorage.save(trainer);
+        if (trainerId != null) {
+            OwnerLink.expectExists(transaction, trainerStorage, trainerId, "Trainer not found");
+            transaction.update(trainerStorage, trainerId, trainer -> {
+                trainer.addTrainingClass(training.getId());
+                return trainer;
+            });
         }
 
+        transaction.commit();
         return training;
     }
 
     public void assignTrainerToClass(String classId, String trainerId) {
-        TrainingClass training = getTrainingClass(classId);
-        training.setTrainerId(trainerId);
+        moveClassToTrainer(classId, () -> trainerId, training -> {
+            training.setTrainerId(trainerId);
+            return training;
+        });
+    }
 
-        Trainer trainer = trainerStorage.getById(trainerId);
-        trainer.addTrainingClass(training.getId());
-        
-        trainerStorage.save(trainer);
-        trainingClassStorageService.save(training);
+    /*
+     * Changes the class and moves its id from the old trainer's list to the new one's in the same transaction.
+     * The old trainer is taken from the index and re-checked under the class's lock (see OwnerLink).
+     * */
+    private void moveClassToTrainer(String classId, Supplier<String> trainerId, UnaryOperator<TrainingClass> change) {
+        if (trainingClassStorageService.getById(classId) == null) {
+            throw new IllegalArgumentException("Training class not found");
+        }
+        trainerLink.update(classId, trainerId, change);
     }
 
     public void deleteTrainingClass(TrainingClass trainingClass){
-        Trainer trainer = trainerStorage.getById(trainingClass.getTrainerId());
-        trainer.removeTrainingClass(trainingClass.getId());
-        trainerStorage.save(trainer);
+        OwnerLink.commit(transaction -> deleteTrainingClass(trainingClass, transaction));
+    }
 
-        Subscription subscription = subscriptionService.getSubscriptionByClientIdAndTrainingClassId(trainingClass.getClientId(), trainingClass.getId());
-        subscriptionService.deleteSubscription(subscription);
+    // For cascades: the transaction has to be built inside OwnerLink.commit()
+    void deleteTrainingClass(TrainingClass trainingClass, StorageTransaction transaction){
+        deleteTrainingClasses(List.of(trainingClass), transaction);
+    }
+
+    void deleteTrainingClasses(Collection<TrainingClass> trainingClasses, StorageTransaction transaction){
+        for (TrainingClass trainingClass : trainingClasses) {
+            // The caller's copy may name an outdated trainer; the index knows the current one
+            trainerLink.detach(transaction, trainingClass.getId());
+
+            Subscription subscription = subscriptionService.getSubscriptionByClientIdAndTrainingClassId(trainingClass.getClientId(), trainingClass.getId());
+            subscriptionService.deleteSubscription(subscription, transaction);
+        }
 
-        trainingClassStorageService.delete(trainingClass.getId());
+        transaction.deleteAll(trainingClassStorageService, trainingClasses.stream().map(TrainingClass::getId).toList());
     }
 
+    // The trainer may have been changed in place; the index still knows the old one
     public void updateTrainingClass(TrainingClass trainingClass) {
-        trainingClassStorageService.save(trainingClass);
+        moveClassToTrainer(trainingClass.getId(), trainingClass::getTrainerId, current -> trainingClass);
     }
 }
\ No newline at end of file
@@ -6,6 +6,9 @@ import core.services.core.PassportService;
 import core.services.core.TrainerService;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class PassportManagementService {
@@ -43,21 +46,26 @@ public class PassportManagementService {
     }
 
     public List<Passport> getAllFreePassports() {
-        return passportService.getAllPassports().stream()
-                .filter(passport -> !passportOccupiedByUsers(passport))
+        // Занятые паспорта собираются один раз, а не сканом всех тренеров и клиентов на каждый паспорт
+        Set<String> occupiedPassportIds = Stream.concat(
+                        trainerService.streamTrainers().map(trainer -> trainer.getPassportId()),
+                        clientService.streamClients().map(client -> client.getPassportId()))
+                .collect(Collectors.toSet());
+        return passportService.streamPassports()
+                .filter(passport -> !occupiedPassportIds.contains(passport.getId()))
                 .toList();
     }
 
     private boolean passportOccupiedByUsers(Passport passport){
-        return trainerService.getAllTrainers().stream()
+        return trainerService.streamTrainers()
                 .anyMatch(trainer -> trainer.getPassportId().equals(passport.getId()))
                 ||
-                clientService.getAllClients().stream()
+                clientService.streamClients()
                 .anyMatch(client -> client.getPassportId().equals(passport.getId()));
     }
 
     private boolean passportOccupied(Passport passport){
-        return passportService.getAllPassports().stream()
+        return passportService.streamPassports()
                 .anyMatch(existingPassport ->
                         existingPassport.getSeries().equals(passport.getSeries()) &&
                         existingPassport.getNumber().equals(passport.getNumber())
@@ -65,7 +73,7 @@ public class PassportManagementService {
     }
 
     private boolean passportOccupied(Passport passport, String excludedId){
-        return passportService.getAllPassports().stream()
+        return passportService.streamPassports()
                 .anyMatch(existingPassport ->
                         !existingPassport.getId().equals(excludedId) &&
                          existingPassport.getSeries().equals(passport.getSeries()) &&
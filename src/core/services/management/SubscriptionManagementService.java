@@ -0,0 +1,86 @@
+package core.services.management;
+
+import core.models.Subscription;
+import core.models.actors.Client;
+import core.models.actors.Trainer;
+import core.models.base.TrainingClass;
+import core.services.core.ClientService;
+import core.services.core.SubscriptionService;
+import core.services.core.TrainerService;
+import core.services.core.TrainingClassService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+public class SubscriptionManagementService {
+
+    private final SubscriptionService subscriptionService;
+    private final ClientService clientService;
+    private final TrainingClassService trainingClassService;
+    private final TrainerService trainerService;
+
+    // Абонемент вместе со всем, что нужно для строки таблицы; ссылки на удалённые сущности - null
+    public record SubscriptionView(Subscription subscription, Client client, TrainingClass trainingClass, Trainer trainer) {
+        public String getId() {
+            return subscription.getId();
+        }
+
+        public String clientName() {
+            return client == null ? "" : client.getName();
+        }
+
+        public String danceType() {
+            return trainingClass == null ? "" : trainingClass.getDanceType();
+        }
+
+        public String trainerName() {
+            return trainer == null ? "" : trainer.getName();
+        }
+    }
+
+    public SubscriptionManagementService(SubscriptionService subscriptionService, ClientService clientService,
+                                         TrainingClassService trainingClassService, TrainerService trainerService) {
+        this.subscriptionService = subscriptionService;
+        this.clientService = clientService;
+        this.trainingClassService = trainingClassService;
+        this.trainerService = trainerService;
+    }
+
+    public List<SubscriptionView> getSubscriptionViews() {
+        return toViews(subscriptionService.getAll());
+    }
+
+    public SubscriptionView toView(Subscription subscription) {
+        return toViews(List.of(subscription)).get(0);
+    }
+
+    // Клиенты, занятия и тренеры достаются тремя пачками getByIds, а не запросом на каждую ячейку
+    public List<SubscriptionView> toViews(List<Subscription> subscriptions) {
+        Map<String, Client> clients = clientService.getClientsByIds(subscriptions.stream()
+                .map(Subscription::getClientId)
+                .collect(Collectors.toSet()));
+        Map<String, TrainingClass> classes = trainingClassService.getTrainingClasses(subscriptions.stream()
+                .map(Subscription::getTrainingClassId)
+                .collect(Collectors.toSet()));
+        Set<String> trainerIds = classes.values().stream()
+                .map(TrainingClass::getTrainerId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, Trainer> trainers = trainerService.getTrainersByIds(trainerIds);
+
+        return subscriptions.stream()
+                .map(subscription -> {
+                    TrainingClass trainingClass = classes.get(subscription.getTrainingClassId());
+                    return new SubscriptionView(
+                            subscription,
+                            clients.get(subscription.getClientId()),
+                            trainingClass,
+                            trainingClass == null ? null : trainers.get(trainingClass.getTrainerId()));
+                })
+                .toList();
+    }
+}
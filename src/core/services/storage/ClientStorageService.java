@@ -2,10 +2,14 @@ package core.services.storage;
 
 import core.models.actors.Client;
 import core.services.base.JsonStorageService;
+import core.services.base.StorageOptions;
 
 public class ClientStorageService extends JsonStorageService<Client> {
     public ClientStorageService() {
-        super(Client.class, "files/clients");
+        super(Client.class, "files/clients", StorageOptions.defaults()
+                .journaled(500)
+                .groupCommit(50)
+                .watched());
     }
 
     @Override
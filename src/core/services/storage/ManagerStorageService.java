@@ -2,10 +2,11 @@ package core.services.storage;
 
 import core.models.actors.Manager;
 import core.services.base.JsonStorageService;
+import core.services.base.StorageOptions;
 
 public class ManagerStorageService extends JsonStorageService<Manager> {
     public ManagerStorageService() {
-        super(Manager.class, "files/managers");
+        super(Manager.class, "files/managers", StorageOptions.defaults().journaled(500).watched());
     }
 
     @Override
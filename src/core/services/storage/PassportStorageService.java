@@ -2,10 +2,17 @@ package core.services.storage;
 
 import core.models.Passport;
 import core.services.base.JsonStorageService;
+import core.services.base.StorageOptions;
 
 public class PassportStorageService extends JsonStorageService<Passport> {
+    // Закоммиченный passports.json при первом запуске разбивается на 4 шарда и удаляется (см. SubscriptionStorageService)
     public PassportStorageService() {
-        super(Passport.class, "files/passports");
+        super(Passport.class, "files/passports", StorageOptions.defaults()
+                .journaled(500)
+                .groupCommit(50)
+                .sharded(4)
+                .memoryMapped()
+                .watched());
     }
 
     @Override
@@ -2,10 +2,35 @@ package core.services.storage;
 
 import core.models.Subscription;
 import core.services.base.JsonStorageService;
+import core.services.base.SnapshotFormat;
+import core.services.base.StorageOptions;
 
 public class SubscriptionStorageService extends JsonStorageService<Subscription> {
+    public static final String BY_CLIENT_ID = "clientId";
+    public static final String BY_TRAINING_CLASS_ID = "trainingClassId";
+    public static final String BY_CLIENT_AND_TRAINING_CLASS = "clientId+trainingClassId"; // уникальный
+
+    /*
+    * Образец данных в репозитории - один files/subscriptions/subscriptions.json. Первый запуск перекладывает его
+    * в 8 шардов .bin и удаляет исходный файл, поэтому git показывает его удалённым. Вернуть образец:
+    * git clean -fX files && git checkout -- files
+    * */
     public SubscriptionStorageService() {
-        super(Subscription.class, "files/subscriptions");
+        super(Subscription.class, "files/subscriptions", StorageOptions.defaults()
+                .journaled(500)
+                .groupCommit(50)
+                .sharded(8)
+                .format(SnapshotFormat.BINARY)
+                .memoryMapped()
+                .watched());
+        defineIndex(BY_CLIENT_ID, Subscription::getClientId);
+        defineIndex(BY_TRAINING_CLASS_ID, Subscription::getTrainingClassId);
+        defineUniqueIndex(BY_CLIENT_AND_TRAINING_CLASS,
+                subscription -> clientAndTrainingClassKey(subscription.getClientId(), subscription.getTrainingClassId()));
+    }
+
+    public static String clientAndTrainingClassKey(String clientId, String trainingClassId) {
+        return clientId + "/" + trainingClassId;
     }
 
     @Override
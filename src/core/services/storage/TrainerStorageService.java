@@ -2,10 +2,14 @@ package core.services.storage;
 
 import core.models.actors.Trainer;
 import core.services.base.JsonStorageService;
+import core.services.base.StorageOptions;
 
 public class TrainerStorageService extends JsonStorageService<Trainer> {
     public TrainerStorageService() {
-        super(Trainer.class, "files/trainers");
+        super(Trainer.class, "files/trainers", StorageOptions.defaults()
+                .journaled(500)
+                .groupCommit(50)
+                .watched());
     }
 
     @Override
@@ -2,11 +2,17 @@ package core.services.storage;
 
 import core.models.base.TrainingClass;
 import core.services.base.JsonStorageService;
+import core.services.base.StorageOptions;
 
 public class TrainingClassStorageService extends JsonStorageService<TrainingClass> {
+    public static final String BY_TRAINER_ID = "trainerId";
 
     public TrainingClassStorageService() {
-        super(TrainingClass.class, "files/trainings");;
+        super(TrainingClass.class, "files/trainings", StorageOptions.defaults()
+                .journaled(500)
+                .groupCommit(50)
+                .watched());
+        defineIndex(BY_TRAINER_ID, TrainingClass::getTrainerId);
     }
 
     @Override
@@ -2,23 +2,30 @@ package ui;
 
 import core.models.enums.UserRole;
 import core.services.AuthService;
+import core.services.ServiceRegistry;
 import ui.users.ClientWindow;
 import ui.users.ManagerWindow;
 import ui.users.TrainerWindow;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 public class AuthWindow extends JFrame {
-    private final AuthService authService;
+    private final ServiceRegistry registry;
+    private AuthService authService; // null, пока хранилища не загрузились; читается и пишется только в EDT
     private final CardLayout cardLayout;
     private final JPanel mainPanel;
 
     private JTextField nameField;
     private JPasswordField passwordField;
+    private JButton clientLoginButton;
+    private JButton employeeLoginButton;
 
-    public AuthWindow(AuthService authService) {
-        this.authService = authService;
+    public AuthWindow(ServiceRegistry registry) {
+        this.registry = registry;
 
         setTitle("Dance Club Management System");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -36,6 +43,31 @@ public class AuthWindow extends JFrame {
         cardLayout.show(mainPanel, "CLIENT");
 
         add(mainPanel);
+
+        // Окно показывается сразу, вход включается, когда загрузятся хранилища пользователей
+        setLoginEnabled(false);
+        registry.authServiceReady().whenComplete((service, error) ->
+                SwingUtilities.invokeLater(() -> onAuthServiceReady(service, error)));
+    }
+
+    private void onAuthServiceReady(AuthService service, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            JOptionPane.showMessageDialog(this, "Failed to load user data: " + cause.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        authService = service;
+        setLoginEnabled(true);
+    }
+
+    private void setLoginEnabled(boolean enabled) {
+        String hint = enabled ? null : "Loading user data...";
+        clientLoginButton.setEnabled(enabled);
+        clientLoginButton.setToolTipText(hint);
+        employeeLoginButton.setEnabled(enabled);
+        employeeLoginButton.setToolTipText(hint);
     }
 
     private JPanel createClientPanel() {
@@ -55,9 +87,9 @@ public class AuthWindow extends JFrame {
         namePanel.add(nameField);
 
         // Login button
-        JButton loginButton = new JButton("Login as Client");
-        loginButton.setAlignmentX(Component.CENTER_ALIGNMENT);
-        loginButton.addActionListener(e -> handleClientLogin());
+        clientLoginButton = new JButton("Login as Client");
+        clientLoginButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+        clientLoginButton.addActionListener(e -> handleClientLogin());
 
         // Switch to employee login button
         JButton switchToEmployeeButton = new JButton("Employee Login");
@@ -70,7 +102,7 @@ public class AuthWindow extends JFrame {
         panel.add(Box.createVerticalStrut(30));
         panel.add(namePanel);
         panel.add(Box.createVerticalStrut(20));
-        panel.add(loginButton);
+        panel.add(clientLoginButton);
         panel.add(Box.createVerticalStrut(20));
         panel.add(switchToEmployeeButton);
 
@@ -100,9 +132,9 @@ public class AuthWindow extends JFrame {
         passwordPanel.add(passwordField);
 
         // Login button
-        JButton loginButton = new JButton("Login");
-        loginButton.setAlignmentX(Component.CENTER_ALIGNMENT);
-        loginButton.addActionListener(e -> handleEmployeeLogin(empNameField.getText(), new String(passwordField.getPassword())));
+        employeeLoginButton = new JButton("Login");
+        employeeLoginButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+        employeeLoginButton.addActionListener(e -> handleEmployeeLogin(empNameField.getText(), new String(passwordField.getPassword())));
 
         // Back to client login button
         JButton backToClientButton = new JButton("Back to Client Login");
@@ -117,7 +149,7 @@ public class AuthWindow extends JFrame {
         panel.add(Box.createVerticalStrut(10));
         panel.add(passwordPanel);
         panel.add(Box.createVerticalStrut(20));
-        panel.add(loginButton);
+        panel.add(employeeLoginButton);
         panel.add(Box.createVerticalStrut(20));
         panel.add(backToClientButton);
 
@@ -158,18 +190,37 @@ public class AuthWindow extends JFrame {
     }
 
     private void openClientWindow(String clientId) {
-        dispose(); // Close auth window
-        SwingUtilities.invokeLater(() -> new ClientWindow(clientId).setVisible(true));
+        openWhenReady(ClientWindow.ready(registry), () -> new ClientWindow(registry, clientId));
     }
 
     private void openManagerWindow(String managerId) {
-        dispose(); // Close auth window
-        SwingUtilities.invokeLater(() -> new ManagerWindow(managerId).setVisible(true));
+        openWhenReady(ManagerWindow.ready(registry), () -> new ManagerWindow(registry, managerId));
     }
 
     private void openTrainerWindow(String trainerId) {
-        dispose(); // Close auth window
-        SwingUtilities.invokeLater(() -> new TrainerWindow(trainerId).setVisible(true));
+        openWhenReady(TrainerWindow.ready(registry), () -> new TrainerWindow(registry, trainerId));
+    }
+
+    // Пока догружаются остальные хранилища, окно входа остаётся на экране; новое окно строится в EDT
+    private void openWhenReady(CompletableFuture<Void> ready, Supplier<JFrame> window) {
+        setLoginEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        ready.thenAcceptAsync(ignored -> {
+            dispose(); // Close auth window
+            window.get().setVisible(true);
+        }, SwingUtilities::invokeLater).whenComplete((ignored, error) -> {
+            if (error != null) {
+                SwingUtilities.invokeLater(() -> onWindowFailed(error));
+            }
+        });
+    }
+
+    private void onWindowFailed(Throwable error) {
+        setCursor(Cursor.getDefaultCursor());
+        setLoginEnabled(true);
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        JOptionPane.showMessageDialog(this, "Failed to open the window: " + cause.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE);
     }
 }
 
@@ -3,54 +3,30 @@ package ui.users;
 import core.models.Subscription;
 import core.models.actors.Trainer;
 import core.models.base.TrainingClass;
+import core.services.ServiceRegistry;
 import core.services.core.*;
-import core.services.storage.*;
 import ui.users.base.BaseWindow;
 import ui.utils.EntityAwareTableModel;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class ClientWindow extends BaseWindow {
     private final ClientService clientService;
     private final TrainerService trainerService;
     private final JTabbedPane tabbedPane;
 
-    public ClientWindow(String clientId) {
-        super("Client Dashboard", clientId);
-        SubscriptionStorageService subscriptionStorageService = new SubscriptionStorageService();
-        ClientStorageService clientStorageService = new ClientStorageService();
-        TrainerStorageService trainerStorageService= new TrainerStorageService();
-        TrainingClassStorageService trainingClassStorageService = new TrainingClassStorageService();
-        PassportStorageService passportStorageService = new PassportStorageService();
-
-        var subscriptionService = new SubscriptionService(
-                subscriptionStorageService,
-                clientStorageService
-        );
-
-        var trainingClassService = new TrainingClassService(
-                trainerStorageService,
-                trainingClassStorageService,
-                subscriptionService
-        );
-
-        var passportService = new PassportService(passportStorageService);
-
-        this.trainerService = new TrainerService(
-                trainerStorageService,
-                trainingClassService,
-                passportService
-        );
-
-        this.clientService = new ClientService(
-                clientStorageService,
-                subscriptionStorageService,
-                trainingClassService,
-                this.trainerService,
-                passportService
-        );
+    // Всё, что конструктор берёт из registry: окно создаётся после этого future, и get*() в EDT уже не ждут загрузки
+    public static CompletableFuture<Void> ready(ServiceRegistry registry) {
+        return CompletableFuture.allOf(registry.trainerServiceReady(), registry.clientServiceReady());
+    }
+
+    public ClientWindow(ServiceRegistry registry, String clientId) {
+        super("Client Dashboard", registry, clientId);
+        this.trainerService = registry.getTrainerService();
+        this.clientService = registry.getClientService();
 
         tabbedPane = new JTabbedPane();
         tabbedPane.addTab("My Subscriptions", createSubscriptionsPanel());
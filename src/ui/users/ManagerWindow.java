@@ -7,9 +7,15 @@ import core.models.actors.Trainer;
 import core.models.base.Employee;
 import core.models.base.TrainingClass;
 import core.models.enums.TrainingLevel;
+import core.services.ServiceRegistry;
+import core.services.base.AsyncStorage;
+import core.services.base.JsonStorageService;
+import core.services.base.StaleEntityException;
+import core.services.base.StorageListener;
 import core.services.core.*;
 import core.services.management.PassportManagementService;
-import core.services.storage.*;
+import core.services.management.SubscriptionManagementService;
+import core.services.management.SubscriptionManagementService.SubscriptionView;
 import ui.users.base.BaseWindow;
 import ui.utils.EntityAwareTableModel;
 
@@ -17,7 +23,12 @@ import javax.swing.*;
 import java.awt.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class ManagerWindow extends BaseWindow {
@@ -27,54 +38,46 @@ public class ManagerWindow extends BaseWindow {
     private final SubscriptionService subscriptionService;
     private final PassportService passportService;
     private final PassportManagementService passportManagementService;
+    private final SubscriptionManagementService subscriptionManagementService;
     private final JTabbedPane tabbedPane;
     private EntityAwareTableModel<Client> clientTableModel;
-    private EntityAwareTableModel<Subscription> subscriptionTableModel;
+    private EntityAwareTableModel<SubscriptionView> subscriptionTableModel;
     private EntityAwareTableModel<TrainingClass> trainingClassTableModel;
     private EntityAwareTableModel<Trainer> trainerTableModel;
+    private EntityAwareTableModel<Passport> passportTableModel;
+    private final AsyncStorage<Passport> passportsAsync;
+    private final AsyncStorage<Subscription> subscriptionsAsync;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final List<Runnable> storageUnsubscribers = new ArrayList<>();
+
+    // Всё, что конструктор берёт из registry: окно создаётся после этого future, и get*() в EDT уже не ждут загрузки
+    public static CompletableFuture<Void> ready(ServiceRegistry registry) {
+        return CompletableFuture.allOf(
+                registry.passportServiceReady(),
+                registry.subscriptionServiceReady(),
+                registry.trainingClassServiceReady(),
+                registry.trainerServiceReady(),
+                registry.clientServiceReady(),
+                registry.passportManagementServiceReady(),
+                registry.subscriptionManagementServiceReady(),
+                registry.clientStorageReady(),
+                registry.trainerStorageReady(),
+                registry.trainingClassStorageReady(),
+                registry.subscriptionStorageReady(),
+                registry.passportStorageReady());
+    }
 
-    public ManagerWindow(String managerId) {
-        super("Manager Dashboard", managerId);
-        SubscriptionStorageService subscriptionStorageService = new SubscriptionStorageService();
-        ClientStorageService clientStorageService = new ClientStorageService();
-        TrainerStorageService trainerStorageService= new TrainerStorageService();
-        TrainingClassStorageService trainingClassStorageService = new TrainingClassStorageService();
-        PassportStorageService passportStorageService = new PassportStorageService();
-
-        this.passportService = new PassportService(passportStorageService);
-
-        this.subscriptionService = new SubscriptionService(
-                subscriptionStorageService,
-                clientStorageService
-        );
-
-        TrainingClassService trainingClassService = new TrainingClassService(
-                trainerStorageService,
-                trainingClassStorageService,
-                subscriptionService
-        );
-
-        this.trainerService = new TrainerService(
-                trainerStorageService,
-                trainingClassService,
-                passportService
-        );
-
-        this.trainingClassService = trainingClassService;
-
-        this.clientService = new ClientService(
-                clientStorageService,
-                subscriptionStorageService,
-                trainingClassService,
-                this.trainerService,
-                this.passportService
-        );
-
-        this.passportManagementService = new PassportManagementService(
-                this.clientService,
-                this.passportService,
-                this.trainerService
-        );
+    public ManagerWindow(ServiceRegistry registry, String managerId) {
+        super("Manager Dashboard", registry, managerId);
+        this.passportService = registry.getPassportService();
+        this.subscriptionService = registry.getSubscriptionService();
+        this.trainingClassService = registry.getTrainingClassService();
+        this.trainerService = registry.getTrainerService();
+        this.clientService = registry.getClientService();
+        this.passportManagementService = registry.getPassportManagementService();
+        this.subscriptionManagementService = registry.getSubscriptionManagementService();
+        this.passportsAsync = registry.getPassportStorage().async();
+        this.subscriptionsAsync = registry.getSubscriptionStorage().async();
 
         tabbedPane = new JTabbedPane();
         tabbedPane.addTab("Clients", createClientsPanel());
@@ -84,6 +87,34 @@ public class ManagerWindow extends BaseWindow {
         tabbedPane.addTab("Passports", createPassportsPanel());
 
         add(tabbedPane, BorderLayout.CENTER);
+
+        // Изменения, сделанные на другой стойке, приходят из потока storage-watcher
+        refreshOnExternalChanges(registry.getClientStorage());
+        refreshOnExternalChanges(registry.getTrainerStorage());
+        refreshOnExternalChanges(registry.getTrainingClassStorage());
+        refreshOnExternalChanges(registry.getSubscriptionStorage());
+        refreshOnExternalChanges(registry.getPassportStorage());
+    }
+
+    private <T> void refreshOnExternalChanges(JsonStorageService<T> storage) {
+        StorageListener<T> listener = event -> {
+            if (event.external() && refreshQueued.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    refreshQueued.set(false);
+                    refreshAllTables();
+                    refreshPassportTable(passportTableModel);
+                });
+            }
+        };
+        storage.addListener(listener);
+        storageUnsubscribers.add(() -> storage.removeListener(listener));
+    }
+
+    @Override
+    public void dispose() {
+        storageUnsubscribers.forEach(Runnable::run);
+        storageUnsubscribers.clear();
+        super.dispose();
     }
 
     private JPanel createClientsPanel() {
@@ -237,7 +268,13 @@ public class ManagerWindow extends BaseWindow {
                 Client updatedClient = new Client(name, passport.getId());
                 updatedClient.setId(client.getId());
                 updatedClient.setSubscriptionIds(client.getSubscriptionIds());
-                clientService.updateClient(updatedClient);
+                updatedClient.setVersion(client.getVersion());
+                try {
+                    clientService.updateClient(updatedClient);
+                } catch (StaleEntityException ex) {
+                    showStaleEntityError(dialog);
+                    return;
+                }
 
                 // Refresh the entire row
                 tableModel.removeRow(row);
@@ -257,6 +294,35 @@ public class ManagerWindow extends BaseWindow {
         dialog.setVisible(true);
     }
 
+    // Edits go to a copy: if the save is rejected, the entity shown in the table stays as it was stored
+    private static Subscription copyOf(Subscription subscription) {
+        Subscription copy = new Subscription(subscription.getId(), subscription.getClientId(),
+                subscription.getTrainingClassId(), subscription.getStartDate(), subscription.getEndDate(),
+                subscription.isPaid());
+        copy.setAttendanceDates(new ArrayList<>(subscription.getAttendanceDates()));
+        copy.setVersion(subscription.getVersion());
+        return copy;
+    }
+
+    // Same for classes; the stored instance also keeps the old trainer until the service moves the class
+    private static TrainingClass copyOf(TrainingClass trainingClass) {
+        TrainingClass copy = new TrainingClass(trainingClass.getId(), trainingClass.getDanceType(), trainingClass.getLevel(),
+                trainingClass.getTrainerId(), trainingClass.getClientId(), trainingClass.getSchedule());
+        copy.setVersion(trainingClass.getVersion());
+        return copy;
+    }
+
+    // Запись успели изменить с другого рабочего места: показываем свежие данные, правку нужно повторить
+    private void showStaleEntityError(JDialog dialog) {
+        JOptionPane.showMessageDialog(dialog,
+                "This record was changed at another desk. The tables were reloaded, please edit it again.",
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+        dialog.dispose();
+        refreshAllTables();
+        refreshPassportTable(passportTableModel);
+    }
+
     private void refreshClientTable(EntityAwareTableModel<Client> tableModel) {
         tableModel.setRowCount(0);
         List<Client> clients = clientService.getAllClients();
@@ -437,9 +503,15 @@ public class ManagerWindow extends BaseWindow {
                 // Copy over values that shouldn't change
                 updatedTrainer.setTrainingClassIds(trainer.getTrainingClassIds());
                 updatedTrainer.setPassword(trainer.getPassword());
+                updatedTrainer.setVersion(trainer.getVersion());
 
                 // Update in service
-                trainerService.updateTrainer(updatedTrainer);
+                try {
+                    trainerService.updateTrainer(updatedTrainer);
+                } catch (StaleEntityException ex) {
+                    showStaleEntityError(dialog);
+                    return;
+                }
 
                 // Update table - remove and add to refresh all formatted values
                 tableModel.removeRow(row);
@@ -670,16 +742,25 @@ public class ManagerWindow extends BaseWindow {
             String schedule = scheduleField.getText().trim();
 
             if (!danceType.isEmpty() && level != null && trainer != null && client != null) {
-                trainingClass.setDanceType(danceType);
-                trainingClass.setLevel(level);
-                trainingClass.setTrainerId(trainer.getId());
-                trainingClass.setClientId(client.getId());
-                trainingClass.setSchedule(schedule);
+                TrainingClass updatedClass = copyOf(trainingClass);
+                updatedClass.setDanceType(danceType);
+                updatedClass.setLevel(level);
+                updatedClass.setTrainerId(trainer.getId());
+                updatedClass.setClientId(client.getId());
+                updatedClass.setSchedule(schedule);
 
-                trainingClassService.updateTrainingClass(trainingClass);
+                try {
+                    trainingClassService.updateTrainingClass(updatedClass);
+                } catch (StaleEntityException ex) {
+                    showStaleEntityError(dialog);
+                    return;
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(dialog, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
 
                 tableModel.removeRow(row);
-                tableModel.addEntity(trainingClass, TrainingClass::getId);
+                tableModel.addEntity(updatedClass, TrainingClass::getId);
 
                 dialog.dispose();
             } else {
@@ -718,7 +799,13 @@ public class ManagerWindow extends BaseWindow {
         saveButton.addActionListener(e -> {
             Trainer selectedTrainer = (Trainer) trainerCombo.getSelectedItem();
             if (selectedTrainer != null) {
-                trainingClassService.assignTrainerToClass(training.getId(), selectedTrainer.getId());
+                try {
+                    trainingClassService.assignTrainerToClass(training.getId(), selectedTrainer.getId());
+                } catch (IllegalArgumentException ex) {
+                    // The class or the trainer was deleted at another desk
+                    JOptionPane.showMessageDialog(dialog, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
 
                 tableModel.removeRow(row);
                 tableModel.addEntity(training, TrainingClass::getId);
@@ -743,26 +830,21 @@ public class ManagerWindow extends BaseWindow {
         // Create table model with columns
         String[] realColumns = new String[]{"ID", "Client", "Class", "Start Date", "End Date", "Paid"};
         String[] displayColumns = new String[]{"Client", "Class", "Start Date", "End Date", "Paid"};
-        EntityAwareTableModel<Subscription> tableModel = new EntityAwareTableModel<>(realColumns, displayColumns);
+        EntityAwareTableModel<SubscriptionView> tableModel = new EntityAwareTableModel<>(realColumns, displayColumns);
 
-        tableModel.setColumnFormatter(0, subscription -> {
-            Client client = clientService.getClientById(subscription.getClientId());
-            return client.getName();
-        });
+        // Строки - готовые SubscriptionView: клиент и занятие уже подтянуты, ячейки ничего не ищут
+        tableModel.setColumnFormatter(0, SubscriptionView::clientName);
 
-        tableModel.setColumnFormatter(1, subscription -> {
-            TrainingClass trainingClass = trainingClassService.getTrainingClass(subscription.getTrainingClassId());
-            return trainingClass.getDanceType();
-        });
+        tableModel.setColumnFormatter(1, SubscriptionView::danceType);
 
-        tableModel.setColumnFormatter(2, subscription ->
-                subscription.getStartDate().toString());
+        tableModel.setColumnFormatter(2, view ->
+                view.subscription().getStartDate().toString());
 
-        tableModel.setColumnFormatter(3, subscription ->
-                subscription.getEndDate().toString());
+        tableModel.setColumnFormatter(3, view ->
+                view.subscription().getEndDate().toString());
 
-        tableModel.setColumnFormatter(4, subscription ->
-                Boolean.toString(subscription.isPaid()));
+        tableModel.setColumnFormatter(4, view ->
+                Boolean.toString(view.subscription().isPaid()));
 
         subscriptionTableModel = tableModel;
 
@@ -788,13 +870,23 @@ public class ManagerWindow extends BaseWindow {
         togglePaidButton.addActionListener(e -> {
             int selectedRow = table.getSelectedRow();
             if (selectedRow != -1) {
-                Subscription subscription = tableModel.getEntityForRow(selectedRow);
-                subscription.setPaid(!subscription.isPaid());
-                subscriptionService.updateSubscription(subscription);
+                SubscriptionView view = tableModel.getEntityForRow(selectedRow);
+                Subscription updatedSubscription = copyOf(view.subscription());
+                updatedSubscription.setPaid(!updatedSubscription.isPaid());
+                try {
+                    subscriptionService.updateSubscription(updatedSubscription);
+                } catch (StaleEntityException ex) {
+                    JOptionPane.showMessageDialog(panel,
+                            "This record was changed at another desk. The tables were reloaded, please try again.",
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    refreshAllTables();
+                    return;
+                }
 
                 // Refresh the row
                 tableModel.removeRow(selectedRow);
-                tableModel.addEntity(subscription, Subscription::getId);
+                tableModel.addEntity(subscriptionManagementService.toView(updatedSubscription), SubscriptionView::getId);
             } else {
                 JOptionPane.showMessageDialog(panel, "Please select a subscription");
             }
@@ -817,7 +909,7 @@ public class ManagerWindow extends BaseWindow {
                         JOptionPane.YES_NO_OPTION
                 );
                 if (confirm == JOptionPane.YES_OPTION) {
-                    Subscription subscription = tableModel.getEntityForRow(selectedRow);
+                    Subscription subscription = tableModel.getEntityForRow(selectedRow).subscription();
                     subscriptionService.deleteSubscription(subscription);
                     tableModel.removeRow(selectedRow);
                     refreshAllTables();
@@ -836,15 +928,31 @@ public class ManagerWindow extends BaseWindow {
         return panel;
     }
 
-    private void refreshSubscriptionTable(EntityAwareTableModel<Subscription> tableModel) {
-        tableModel.setRowCount(0);
-        List<Subscription> subscriptions = subscriptionService.getAll();
-        for (Subscription subscription : subscriptions) {
-            tableModel.addEntity(subscription, Subscription::getId);
-        }
+    // Абонементы и паспорта - самые большие таблицы: список собирается на storage-io, таблица заполняется в EDT
+    private void refreshSubscriptionTable(EntityAwareTableModel<SubscriptionView> tableModel) {
+        fillAsync(tableModel, subscriptionsAsync.getAllAsync().thenApply(subscriptionManagementService::toViews),
+                SubscriptionView::getId, "subscriptions");
     }
 
-    private void showAddSubscriptionDialog(EntityAwareTableModel<Subscription> tableModel) {
+    private <T> void fillAsync(EntityAwareTableModel<T> tableModel, CompletableFuture<List<T>> rows,
+                               Function<T, String> idExtractor, String what) {
+        rows.whenComplete((entities, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                JOptionPane.showMessageDialog(this,
+                        "Failed to load " + what + ": " + cause.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            tableModel.setRowCount(0);
+            for (T entity : entities) {
+                tableModel.addEntity(entity, idExtractor);
+            }
+        }));
+    }
+
+    private void showAddSubscriptionDialog(EntityAwareTableModel<SubscriptionView> tableModel) {
         JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Add Subscription", true);
         JPanel form = new JPanel(new GridLayout(6, 2, 5, 5));
         form.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
@@ -899,12 +1007,17 @@ public class ManagerWindow extends BaseWindow {
                             isPaid
                     );
 
-                    tableModel.addEntity(subscription, Subscription::getId);
+                    tableModel.addEntity(subscriptionManagementService.toView(subscription), SubscriptionView::getId);
 
                     dialog.dispose();
-                } catch (Exception ex) {
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(dialog,
+                            ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                } catch (DateTimeParseException ex) {
                     JOptionPane.showMessageDialog(dialog,
-                            "Invalid date format. Please use YYYY-MM-DD format." + ex.getMessage(),
+                            "Invalid date format. Please use YYYY-MM-DD format.",
                             "Error",
                             JOptionPane.ERROR_MESSAGE);
                 }
@@ -924,8 +1037,9 @@ public class ManagerWindow extends BaseWindow {
         dialog.setVisible(true);
     }
 
-    private void showEditSubscriptionDialog(EntityAwareTableModel<Subscription> tableModel, int row) {
-        Subscription subscription = tableModel.getEntityForRow(row);
+    private void showEditSubscriptionDialog(EntityAwareTableModel<SubscriptionView> tableModel, int row) {
+        SubscriptionView view = tableModel.getEntityForRow(row);
+        Subscription subscription = view.subscription();
 
         JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), "Edit Subscription", true);
         JPanel form = new JPanel(new GridLayout(6, 2, 5, 5));
@@ -933,7 +1047,7 @@ public class ManagerWindow extends BaseWindow {
 
         List<Client> clients = clientService.getAllClients();
         JComboBox<Client> clientCombo = new JComboBox<>(clients.toArray(new Client[0]));
-        clientCombo.setSelectedItem(clientService.getClientById(subscription.getClientId()));
+        clientCombo.setSelectedItem(view.client());
 
         JTextField startDateField = new JTextField(subscription.getStartDate().toString());
         JTextField endDateField = new JTextField(subscription.getEndDate().toString());
@@ -942,7 +1056,7 @@ public class ManagerWindow extends BaseWindow {
 
         List<TrainingClass> classes = trainingClassService.getAllClasses();
         JComboBox<TrainingClass> classesCombo = new JComboBox<>(classes.toArray(new TrainingClass[0]));
-        classesCombo.setSelectedItem(trainingClassService.getTrainingClass(subscription.getTrainingClassId()));
+        classesCombo.setSelectedItem(view.trainingClass());
 
         form.add(new JLabel("Client:"));
         form.add(clientCombo);
@@ -973,24 +1087,43 @@ public class ManagerWindow extends BaseWindow {
                     LocalDate startDate = LocalDate.parse(startDateStr);
                     LocalDate endDate = LocalDate.parse(endDateStr);
 
-                    subscription.setClientId(client.getId());
-                    subscription.setTrainingClassId(trainingClass.getId());
-                    subscription.setStartDate(startDate);
-                    subscription.setEndDate(endDate);
-                    subscription.setPaid(isPaid);
+                    // Checked before the in-place edit: a rejected save would leave the table entity changed
+                    Subscription existing = subscriptionService.getSubscriptionByClientIdAndTrainingClassId(
+                            client.getId(), trainingClass.getId());
+                    if (existing != null && !existing.getId().equals(subscription.getId())) {
+                        JOptionPane.showMessageDialog(dialog,
+                                "Client already has a subscription to this class",
+                                "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+
+                    Subscription updatedSubscription = copyOf(subscription);
+                    updatedSubscription.setClientId(client.getId());
+                    updatedSubscription.setTrainingClassId(trainingClass.getId());
+                    updatedSubscription.setStartDate(startDate);
+                    updatedSubscription.setEndDate(endDate);
+                    updatedSubscription.setPaid(isPaid);
 
-                    subscriptionService.updateSubscription(subscription);
+                    subscriptionService.updateSubscription(updatedSubscription);
 
                     // Refresh the row
                     tableModel.removeRow(row);
-                    tableModel.addEntity(subscription, Subscription::getId);
+                    tableModel.addEntity(subscriptionManagementService.toView(updatedSubscription), SubscriptionView::getId);
 
                     dialog.dispose();
-                } catch (Exception ex) {
+                } catch (StaleEntityException ex) {
+                    showStaleEntityError(dialog);
+                } catch (DateTimeParseException ex) {
                     JOptionPane.showMessageDialog(dialog,
                             "Invalid date format. Please use YYYY-MM-DD format.",
                             "Error",
                             JOptionPane.ERROR_MESSAGE);
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(dialog,
+                            ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
                 }
             } else {
                 JOptionPane.showMessageDialog(dialog,
@@ -1015,6 +1148,7 @@ public class ManagerWindow extends BaseWindow {
         String[] realColumns = new String[]{"ID", "Address", "BirthDate", "Number", "Series", "Overdue"};
         String[] displayColumns = new String[]{"Address", "BirthDate", "Number", "Series", "Overdue"};
         EntityAwareTableModel<Passport> tableModel = new EntityAwareTableModel<>(realColumns, displayColumns);
+        passportTableModel = tableModel;
 
         tableModel.setColumnFormatter(0, Passport::getAddress);
 
@@ -1089,11 +1223,7 @@ public class ManagerWindow extends BaseWindow {
     }
 
     private void refreshPassportTable(EntityAwareTableModel<Passport> tableModel) {
-        tableModel.setRowCount(0);
-        List<Passport> passports = passportService.getAllPassports();
-        for (Passport passport : passports) {
-            tableModel.addEntity(passport, Passport::getId);
-        }
+        fillAsync(tableModel, passportsAsync.getAllAsync(), Passport::getId, "passports");
     }
 
     private void showAddPassportDialog(EntityAwareTableModel<Passport> tableModel) {
@@ -1223,6 +1353,7 @@ public class ManagerWindow extends BaseWindow {
                             overdue
                     );
                     updatedPassport.setId(passport.getId());
+                    updatedPassport.setVersion(passport.getVersion());
 
                     // Update in service
                     passportManagementService.updateIfPassportNotOccupied(updatedPassport);
@@ -1232,6 +1363,8 @@ public class ManagerWindow extends BaseWindow {
                     tableModel.addEntity(updatedPassport, Passport::getId);
 
                     dialog.dispose();
+                } catch (StaleEntityException ex) {
+                    showStaleEntityError(dialog);
                 } catch (DateTimeParseException ex) {
                     JOptionPane.showMessageDialog(dialog,
                             "Invalid date format. Please use YYYY-MM-DD format.",
@@ -1,12 +1,8 @@
 package ui.users;
 
 import core.models.base.TrainingClass;
-import core.services.core.SubscriptionService;
+import core.services.ServiceRegistry;
 import core.services.core.TrainingClassService;
-import core.services.storage.ClientStorageService;
-import core.services.storage.SubscriptionStorageService;
-import core.services.storage.TrainerStorageService;
-import core.services.storage.TrainingClassStorageService;
 import ui.users.base.BaseWindow;
 import ui.utils.EntityAwareTableModel;
 
@@ -14,22 +10,22 @@ import javax.swing.*;
 import java.awt.*;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class TrainerWindow extends BaseWindow {
     private final TrainingClassService trainingClassService;
     private final JTabbedPane tabbedPane;
 
-    public TrainerWindow(String trainerId) {
-        super("Trainer Dashboard", trainerId);
+    // Всё, что конструктор берёт из registry: окно создаётся после этого future, и get*() в EDT уже не ждут загрузки
+    public static CompletableFuture<Void> ready(ServiceRegistry registry) {
+        return CompletableFuture.allOf(registry.trainingClassServiceReady());
+    }
+
+    public TrainerWindow(ServiceRegistry registry, String trainerId) {
+        super("Trainer Dashboard", registry, trainerId);
 
-        this.trainingClassService = new TrainingClassService(
-                new TrainerStorageService(),
-                new TrainingClassStorageService(),
-                new SubscriptionService(
-                        new SubscriptionStorageService(),
-                        new ClientStorageService())
-        );
+        this.trainingClassService = registry.getTrainingClassService();
 
         tabbedPane = new JTabbedPane();
         tabbedPane.addTab("My Classes", createClassesPanel());
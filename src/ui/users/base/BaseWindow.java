@@ -1,18 +1,17 @@
 package ui.users.base;
 
-import core.services.AuthService;
-import core.services.storage.ClientStorageService;
-import core.services.storage.ManagerStorageService;
-import core.services.storage.TrainerStorageService;
+import core.services.ServiceRegistry;
 import ui.AuthWindow;
 
 import javax.swing.*;
 import java.awt.*;
 
 public abstract class BaseWindow extends JFrame {
+    protected final ServiceRegistry registry;
     protected final String userId;
 
-    public BaseWindow(String title, String userId) {
+    public BaseWindow(String title, ServiceRegistry registry, String userId) {
+        this.registry = registry;
         this.userId = userId;
         setTitle(title);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -32,11 +31,7 @@ public abstract class BaseWindow extends JFrame {
     protected void logout() {
         dispose();
         SwingUtilities.invokeLater(() -> {
-            AuthWindow authWindow = new AuthWindow(new AuthService(
-                    new ClientStorageService(),
-                    new ManagerStorageService(),
-                    new TrainerStorageService()
-            ));
+            AuthWindow authWindow = new AuthWindow(registry);
             authWindow.setVisible(true);
         });
     }
@@ -0,0 +1,173 @@
+package core.services.base;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import core.models.actors.Client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Восстановление транзакции упавшего процесса поверх более поздних записей.
+ * Мёртвый владелец оставил в commit.journal BEGIN без COMMITTED, после чего другой процесс уже записал
+ * более новые версии. Восстановление не должно откатывать их и дописывать устаревшие записи в журнал хранилища.
+ * Пути хранилищ относительные (files/...), поэтому проверка идёт в дочерней JVM во временном каталоге:
+ *   javac -d out -cp lib/gson-2.10.1.jar $(find src test -name '*.java')
+ *   java -cp out:lib/gson-2.10.1.jar core.services.base.CommitRecoveryTest
+ * Код выхода не 0 - проверка не прошла.
+ * */
+public final class CommitRecoveryTest {
+    private static final String CHILD = "child";
+    private static final String STORAGE_KEY = "files/clients";
+    private static final String DEAD_OWNER = "deadbeefdeadbeef";
+
+    private CommitRecoveryTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            System.exit(runChecks());
+        }
+        Path workDir = Files.createTempDirectory("commit-recovery");
+        try {
+            String classPath = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                    .map(entry -> new File(entry).getAbsolutePath())
+                    .collect(Collectors.joining(File.pathSeparator));
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            Process child = new ProcessBuilder(java, "-Ddanceclub.storage=json", "-cp", classPath,
+                    CommitRecoveryTest.class.getName(), CHILD)
+                    .directory(workDir.toFile())
+                    .inheritIO()
+                    .start();
+            int exitCode = child.waitFor();
+            System.out.println(exitCode == 0 ? "CommitRecoveryTest passed" : "CommitRecoveryTest FAILED");
+            System.exit(exitCode);
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private static int runChecks() throws IOException {
+        Gson gson = new Gson();
+        ClientStorage storage = new ClientStorage();
+        Client kept = new Client("kept", "OLD", null);
+        Client deleted = new Client("deleted", "OLD", null);
+        Client recovered = new Client("recovered", "OLD", null);
+        storage.saveAll(List.of(kept, deleted, recovered));
+        // Все три в версии 1 - их видела упавшая транзакция; затем kept и deleted обновил до версии 2 другой процесс
+        kept.setName("NEW");
+        storage.save(kept);
+        deleted.setName("NEW");
+        storage.save(deleted);
+        storage.close();
+
+        // Упавшая транзакция: PUT kept версии 1 и DELETE deleted при версии 1 уже перекрыты,
+        // PUT recovered версии 2 в журнал хранилища не попал - его нужно доиграть
+        JsonArray records = new JsonArray();
+        records.add(StorageJournal.putRecord("kept", stale(gson, "kept", "OLD", 1)));
+        records.add(StorageJournal.deleteRecord("deleted", 1));
+        records.add(StorageJournal.putRecord("recovered", stale(gson, "recovered", "NEW", 2)));
+        writeDeadTransaction(records);
+        int logged = readStorageLog().size();
+
+        ClientStorage reopened = new ClientStorage();
+        int failures = 0;
+        failures += expect("kept keeps the newer name", "NEW", nameOf(reopened, "kept"));
+        failures += expect("kept keeps version 2", 2L, versionOf(reopened, "kept"));
+        failures += expect("deleted is not deleted", "NEW", nameOf(reopened, "deleted"));
+        failures += expect("recovered is replayed", "NEW", nameOf(reopened, "recovered"));
+        failures += expect("one transaction recovered", 1, reopened.getLoadStats().recoveredTransactions());
+        reopened.close();
+
+        failures += expect("only the replayed record is appended", List.of("PUT recovered"), readStorageLog().stream()
+                .skip(logged)
+                .map(record -> record.get("op").getAsString() + " " + record.get("id").getAsString())
+                .toList());
+
+        ClientStorage again = new ClientStorage();
+        failures += expect("nothing left to recover", 0, again.getLoadStats().recoveredTransactions());
+        failures += expect("kept survives a restart", "NEW", nameOf(again, "kept"));
+        again.close();
+        return failures == 0 ? 0 : 1;
+    }
+
+    private static JsonObject stale(Gson gson, String id, String name, long version) {
+        JsonObject tree = gson.toJsonTree(new Client(id, name, null)).getAsJsonObject();
+        tree.addProperty("version", version);
+        return tree;
+    }
+
+    // BEGIN владельца без файла .owner - для CommitJournal это упавший процесс
+    private static void writeDeadTransaction(JsonArray records) throws IOException {
+        JsonObject storages = new JsonObject();
+        storages.add(STORAGE_KEY, records);
+        JsonObject begin = new JsonObject();
+        begin.addProperty("type", "BEGIN");
+        begin.addProperty("tx", "crashed-tx");
+        begin.addProperty("owner", DEAD_OWNER);
+        begin.add("storages", storages);
+        try (FileOutputStream out = new FileOutputStream("files" + File.separator + "commit.journal", true)) {
+            out.write((begin + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<JsonObject> readStorageLog() throws IOException {
+        File[] logs = new File(STORAGE_KEY).listFiles((dir, name) -> name.endsWith(".log"));
+        List<JsonObject> records = new ArrayList<>();
+        for (File log : logs == null ? new File[0] : logs) {
+            for (String line : Files.readAllLines(log.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    records.add(JsonParser.parseString(line).getAsJsonObject());
+                }
+            }
+        }
+        return records;
+    }
+
+    private static String nameOf(ClientStorage storage, String id) {
+        Client client = storage.getById(id);
+        return client == null ? null : client.getName();
+    }
+
+    private static long versionOf(ClientStorage storage, String id) {
+        Client client = storage.getById(id);
+        return client == null ? -1 : client.getVersion();
+    }
+
+    private static int expect(String check, Object expected, Object actual) {
+        if (expected.equals(actual)) {
+            return 0;
+        }
+        System.err.println("FAILED: " + check + ": expected " + expected + ", got " + actual);
+        return 1;
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static final class ClientStorage extends JsonStorageService<Client> {
+        ClientStorage() {
+            super(Client.class, STORAGE_KEY, StorageOptions.defaults().journaled(500));
+        }
+
+        @Override
+        protected String getId(Client client) {
+            return client.getId();
+        }
+    }
+}